@@ -6,6 +6,7 @@ public class BM25 extends CachedRetrievalModel {
     private double b;
     private double k1;
     private double k3;
+    private String pruning;
 
     public double getB() {
         return b;
@@ -19,11 +20,23 @@ public class BM25 extends CachedRetrievalModel {
         return k3;
     }
 
+    /**
+     * The dynamic pruning algorithm that QrySopSum.evaluateTopK uses.
+     */
+    public String getPruning() {
+        return pruning;
+    }
+
     public BM25(double b, double k1, double k3) throws IOException {
+        this(b, k1, k3, QrySopSum.PRUNING_NONE);
+    }
+
+    public BM25(double b, double k1, double k3, String pruning) throws IOException {
         super();
         this.b = b;
         this.k1 = k1;
         this.k3 = k3;
+        this.pruning = pruning;
     }
 
     @Override
@@ -31,37 +44,8 @@ public class BM25 extends CachedRetrievalModel {
         return "#sum";
     }
 
-    /**
-     * getScore for BM25 model per term per document.
-     */
-    public double getScore(String stem, TermVector termVector, String field) throws IOException {
-        long docLen = Idx.getFieldLength(field, termVector.docId);
-        int stemIdx = termVector.indexOfStem(stem);
-        if (stemIdx == -1) return 0;
-
-        int tf = termVector.stemFreq(stemIdx);
-        long N = Idx.getNumDocs();
-        double avgDocLen = fieldTotalLengths.get(field) / (double) fieldDocCounts.get(field);
-        int df = termVector.stemDf(stemIdx);
-
-        double rsjWeight = Math.max(0, Math.log((N - df + 0.5) / (df + 0.5)));
-        double termWeight = tf / (
-                tf + getK1() * (1 - getB() + getB() * docLen / avgDocLen)
-        );
-        return rsjWeight * termWeight;
-    }
-
-    /**
-     * getScore for BM25 model of a bag of words per document.
-     */
-    public double getScore(String[] stems, TermVector termVector, String field) throws IOException {
-        double score = 0;
-
-        if (termVector.positionsLength() == 0 && termVector.stemsLength() == 0) return Double.NaN;
-        for (String stem : stems) {
-            score += getScore(stem, termVector, field); // user weight is 1 for #SUM
-        }
-
-        return score;
+    @Override
+    public String getSignature() {
+        return "BM25(b=" + b + ",k_1=" + k1 + ",k_3=" + k3 + ")";
     }
 }
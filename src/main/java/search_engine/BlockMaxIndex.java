@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-block statistics of the inverted lists of an index, for
+ * Block-Max WAND.  Each inverted list is cut into blocks of BLOCK_SIZE
+ * postings; for each block, the index stores the last docid, the
+ * largest tf, and the smallest field length in the block.  From these,
+ * a retrieval model can bound the score of any document in the block
+ * (see QrySopSum).
+ * <p>
+ * Only lists that have more than one block are stored; a shorter list
+ * is bounded as a whole.  The statistics don't depend on retrieval
+ * model parameters, so they are built once per index and saved in a
+ * sidecar file next to the index directory (indexPath.blockmax).  The
+ * file records the index version, and is rebuilt if the index changes.
+ * </p>
+ */
+public class BlockMaxIndex {
+
+    //  --------------- Constants and variables -----------------------
+
+    /**
+     * The number of postings in a block.
+     */
+    public static final int BLOCK_SIZE = 128;
+
+    private static final int MAGIC = 0x424d4158;   // "BMAX"
+    private static final int FORMAT_VERSION = 1;
+
+    private final long indexVersion;
+
+    /**
+     * field -> term -> blocks
+     */
+    private final Map<String, Map<String, TermBlocks>> fields;
+
+    //  --------------- Nested classes --------------------------------
+
+    /**
+     * The blocks of one inverted list.  Block i covers the postings
+     * after block i-1, up to and including docid lastDocids[i].
+     */
+    public static class TermBlocks {
+        public final int[] lastDocids;
+        public final int[] maxTfs;
+        public final int[] minFieldLengths;
+
+        private TermBlocks(int numBlocks) {
+            this.lastDocids = new int[numBlocks];
+            this.maxTfs = new int[numBlocks];
+            this.minFieldLengths = new int[numBlocks];
+        }
+
+        /**
+         * @return The number of blocks.
+         */
+        public int size() {
+            return this.lastDocids.length;
+        }
+    }
+
+    //  --------------- Methods ---------------------------------------
+
+    private BlockMaxIndex(long indexVersion, Map<String, Map<String, TermBlocks>> fields) {
+        this.indexVersion = indexVersion;
+        this.fields = fields;
+    }
+
+    /**
+     * Get the blocks of a term's inverted list.
+     *
+     * @param field The field that the term occurs in.
+     * @param term  The processed (stemmed, lower-cased, etc) term string.
+     * @return The blocks, or null if the list is not long enough to
+     * have been split into blocks.
+     */
+    public TermBlocks get(String field, String term) {
+        Map<String, TermBlocks> terms = this.fields.get(field);
+        return (terms == null) ? null : terms.get(term);
+    }
+
+    /**
+     * Load the block-max index of a Lucene index from its sidecar file,
+     * or build it (and write the sidecar file) if the file is missing or
+     * was built for a different version of the index.
+     *
+     * @param indexPath A directory that contains a Lucene index.
+     * @param reader    The open index.
+     * @return The block-max index.
+     * @throws IOException Error accessing the index or the sidecar file.
+     */
+    public static BlockMaxIndex open(String indexPath, IndexReader reader) throws IOException {
+        Path path = sidecarPath(indexPath);
+        long version = indexVersion(reader);
+
+        if (Files.exists(path)) {
+            BlockMaxIndex index = read(path);
+            if ((index.indexVersion == version) && (version >= 0)) return index;
+        }
+
+        BlockMaxIndex index = build(reader);
+        index.write(path);
+        return index;
+    }
+
+    /**
+     * @param indexPath A directory that contains a Lucene index.
+     * @return The path of the index's block-max sidecar file.
+     */
+    public static Path sidecarPath(String indexPath) {
+        Path dir = Paths.get(indexPath).toAbsolutePath().normalize();
+        return dir.resolveSibling(dir.getFileName() + ".blockmax");
+    }
+
+    /**
+     * The version of an index, or -1 if it is unknown (the block-max
+     * index is then always rebuilt).
+     */
+    private static long indexVersion(IndexReader reader) {
+        return (reader instanceof DirectoryReader) ? ((DirectoryReader) reader).getVersion() : -1;
+    }
+
+    /**
+     * Build the block-max index of every field in Idx.ALL_FIELDS with a
+     * single pass over the tfs of each long inverted list.
+     *
+     * @param reader An open index.
+     * @return The block-max index.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public static BlockMaxIndex build(IndexReader reader) throws IOException {
+        Map<String, int[]> fieldLengths = Idx.loadFieldLengths(reader);
+        Map<String, Map<String, TermBlocks>> fields = new HashMap<>();
+
+        for (String field : Idx.ALL_FIELDS) {
+            Map<String, TermBlocks> terms = new HashMap<>();
+            fields.put(field, terms);
+
+            Terms fieldTerms = MultiTerms.getTerms(reader, field);
+            if (fieldTerms == null) continue;
+
+            int[] lengths = fieldLengths.get(field);
+            TermsEnum termsEnum = fieldTerms.iterator();
+            PostingsEnum postings = null;
+            BytesRef termBytes;
+
+            while ((termBytes = termsEnum.next()) != null) {
+                int df = termsEnum.docFreq();
+                if (df <= BLOCK_SIZE) continue;
+
+                TermBlocks blocks = new TermBlocks((df + BLOCK_SIZE - 1) / BLOCK_SIZE);
+                postings = termsEnum.postings(postings, PostingsEnum.FREQS);
+
+                int n = 0;
+                for (int d = postings.nextDoc(); d != DocIdSetIterator.NO_MORE_DOCS; d = postings.nextDoc(), n++) {
+                    int b = n / BLOCK_SIZE;
+                    int tf = postings.freq();
+
+                    if (n % BLOCK_SIZE == 0) {
+                        blocks.maxTfs[b] = tf;
+                        blocks.minFieldLengths[b] = lengths[d];
+                    } else {
+                        blocks.maxTfs[b] = Math.max(blocks.maxTfs[b], tf);
+                        blocks.minFieldLengths[b] = Math.min(blocks.minFieldLengths[b], lengths[d]);
+                    }
+                    blocks.lastDocids[b] = d;
+                }
+
+                terms.put(termBytes.utf8ToString(), blocks);
+            }
+        }
+
+        return new BlockMaxIndex(indexVersion(reader), fields);
+    }
+
+    /**
+     * Read a block-max index from a sidecar file.
+     *
+     * @param path The sidecar file.
+     * @return The block-max index.
+     * @throws IOException Error reading the file, or it isn't a sidecar file.
+     */
+    public static BlockMaxIndex read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if ((in.readInt() != MAGIC) || (in.readInt() != FORMAT_VERSION)) {
+                throw new IOException(path + " is not a block-max index.");
+            }
+            if (in.readInt() != BLOCK_SIZE) {
+                throw new IOException(path + " has a different block size.");
+            }
+
+            long indexVersion = in.readLong();
+            Map<String, Map<String, TermBlocks>> fields = new HashMap<>();
+
+            int numFields = in.readInt();
+            for (int f = 0; f < numFields; f++) {
+                String field = in.readUTF();
+                int numTerms = in.readInt();
+                Map<String, TermBlocks> terms = new HashMap<>(2 * numTerms);
+
+                for (int t = 0; t < numTerms; t++) {
+                    byte[] termBytes = new byte[in.readInt()];
+                    in.readFully(termBytes);
+
+                    TermBlocks blocks = new TermBlocks(in.readInt());
+                    for (int b = 0; b < blocks.size(); b++) {
+                        blocks.lastDocids[b] = in.readInt();
+                        blocks.maxTfs[b] = in.readInt();
+                        blocks.minFieldLengths[b] = in.readInt();
+                    }
+
+                    terms.put(new String(termBytes, StandardCharsets.UTF_8), blocks);
+                }
+
+                fields.put(field, terms);
+            }
+
+            return new BlockMaxIndex(indexVersion, fields);
+        }
+    }
+
+    /**
+     * Write the block-max index to a sidecar file.  The file is written
+     * to a temporary file first, so a reader never sees a partial file.
+     *
+     * @param path The sidecar file.
+     * @throws IOException Error writing the file.
+     */
+    public void write(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(BLOCK_SIZE);
+            out.writeLong(this.indexVersion);
+
+            out.writeInt(this.fields.size());
+            for (Map.Entry<String, Map<String, TermBlocks>> field : this.fields.entrySet()) {
+                out.writeUTF(field.getKey());
+                out.writeInt(field.getValue().size());
+
+                for (Map.Entry<String, TermBlocks> term : field.getValue().entrySet()) {
+                    byte[] termBytes = term.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(termBytes.length);
+                    out.write(termBytes);
+
+                    TermBlocks blocks = term.getValue();
+                    out.writeInt(blocks.size());
+                    for (int b = 0; b < blocks.size(); b++) {
+                        out.writeInt(blocks.lastDocids[b]);
+                        out.writeInt(blocks.maxTfs[b]);
+                        out.writeInt(blocks.minFieldLengths[b]);
+                    }
+                }
+            }
+        }
+
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -10,9 +10,11 @@ import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Idx manages and provides access to Lucene indexes and auxiliary
@@ -40,9 +42,64 @@ public class Idx {
     public static IndexReader INDEXREADER = null;
 
     private static HashMap<String, IndexReader> openIndexReaders = new HashMap<String, IndexReader>();
+    private static String currentIndexPath = null;
     private static String externalIdField = new String("externalId");
 
-    private static Map<String, Map<Integer, Long>> fieldLengthCache = new HashMap<>();
+    /**
+     * field -> docid -> field length, for indexes without dense field
+     * lengths.  Queries may run concurrently, so it is a concurrent map.
+     */
+    private static Map<String, Map<Integer, Long>> fieldLengthCache = new ConcurrentHashMap<>();
+
+    /**
+     * Optional dense field lengths of each open index (indexPath ->
+     * field -> length indexed by internal docid), and those of the
+     * current index.  If present, getFieldLength is an array load.
+     */
+    private static HashMap<String, Map<String, int[]>> openFieldLengths = new HashMap<>();
+    private static Map<String, int[]> fieldLengths = null;
+
+    /**
+     * docid -> external docid tables of each open index, and that of
+     * the current index.  They are built on first use (by one thread;
+     * the current table is volatile so other threads see it complete).
+     */
+    private static HashMap<IndexReader, ExternalIdTable> openExternalIds = new HashMap<>();
+    private static volatile ExternalIdTable externalIds = null;
+
+    /**
+     * Optional block-max indexes of each open index (see BlockMaxIndex),
+     * and that of the current index.
+     */
+    private static HashMap<String, BlockMaxIndex> openBlockMaxIndexes = new HashMap<>();
+    private static BlockMaxIndex blockMaxIndex = null;
+
+    //  --------------- Nested classes --------------------------------
+
+    /**
+     * The external docids of every document, packed as UTF-8 bytes in
+     * docid order.  The external id of document d is
+     * bytes[offsets[d]] ... bytes[offsets[d + 1] - 1].
+     */
+    private static class ExternalIdTable {
+        private final byte[] bytes;
+        private final int[] offsets;
+
+        private ExternalIdTable(byte[] bytes, int[] offsets) {
+            this.bytes = bytes;
+            this.offsets = offsets;
+        }
+
+        /**
+         * @param docid An internal document id.
+         * @return The external docid, or null if the table doesn't have it.
+         */
+        private String get(int docid) {
+            int length = this.offsets[docid + 1] - this.offsets[docid];
+            if (length == 0) return null;
+            return new String(this.bytes, this.offsets[docid], length, StandardCharsets.UTF_8);
+        }
+    }
 
     //  --------------- Methods ---------------------------------------
 
@@ -95,10 +152,71 @@ public class Idx {
      * @throws IOException Error accessing the Lucene index.
      */
     public static String getExternalDocid(int iid) throws IOException {
+        ExternalIdTable table = Idx.externalIds;
+        if (table == null) table = buildExternalIdTable();
+
+        String externalId = table.get(iid);
+        if (externalId != null) return externalId;
+
         Document d = Idx.INDEXREADER.document(iid);
         return d.get(externalIdField);
     }
 
+    /**
+     * Build the docid -> external docid table of the current index from
+     * the terms of the externalId field, so that looking up an external
+     * docid doesn't require decompressing a stored document.  The
+     * terms are read twice:  once to size the table, once to fill it.
+     *
+     * @return The table of the current index.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    private static synchronized ExternalIdTable buildExternalIdTable() throws IOException {
+        ExternalIdTable table = openExternalIds.get(Idx.INDEXREADER);
+
+        if (table == null) {
+            int[] offsets = new int[Idx.INDEXREADER.maxDoc() + 1];
+
+            for (int pass = 0; pass < 2 && table == null; pass++) {
+                byte[] bytes = (pass == 0) ? null : new byte[offsets[offsets.length - 1]];
+
+                for (LeafReaderContext leafContext : Idx.INDEXREADER.leaves()) {
+                    Terms terms = leafContext.reader().terms(externalIdField);
+                    if (terms == null) continue;
+
+                    TermsEnum termsEnum = terms.iterator();
+                    PostingsEnum postings = null;
+                    BytesRef term;
+
+                    while ((term = termsEnum.next()) != null) {
+                        postings = termsEnum.postings(postings, PostingsEnum.NONE);
+
+                        for (int d = postings.nextDoc(); d != DocIdSetIterator.NO_MORE_DOCS; d = postings.nextDoc()) {
+                            int docid = leafContext.docBase + d;
+
+                            if (pass == 0) {
+                                offsets[docid + 1] = term.length;   // converted to offsets below
+                            } else if (offsets[docid + 1] - offsets[docid] == term.length) {
+                                System.arraycopy(term.bytes, term.offset, bytes, offsets[docid], term.length);
+                            }
+                        }
+                    }
+                }
+
+                if (pass == 0) {
+                    for (int i = 1; i < offsets.length; i++) offsets[i] += offsets[i - 1];
+                } else {
+                    table = new ExternalIdTable(bytes, offsets);
+                }
+            }
+
+            openExternalIds.put(Idx.INDEXREADER, table);
+        }
+
+        Idx.externalIds = table;
+        return table;
+    }
+
     /**
      * Get the length of the specified field in the specified document.
      *
@@ -108,11 +226,16 @@ public class Idx {
      * @throws IOException Error accessing the Lucene index.
      */
     public static long getFieldLength(String fieldName, int docid) throws IOException {
-        fieldLengthCache.putIfAbsent(fieldName, new HashMap<>());
+        if (Idx.fieldLengths != null) {
+            int[] lengths = Idx.fieldLengths.get(fieldName);
+            if (lengths != null) return lengths[docid];
+        }
+
+        Map<Integer, Long> cache = fieldLengthCache.computeIfAbsent(fieldName, f -> new ConcurrentHashMap<>());
         long fieldLength = 0;
-        boolean found = fieldLengthCache.get(fieldName).containsKey(docid);
-        if (found) {
-            fieldLength = fieldLengthCache.get(fieldName).get(docid);
+        Long cached = cache.get(docid);
+        if (cached != null) {
+            fieldLength = cached;
         } else {
             LeafReaderContext leafContext = getLeafReaderContext(Idx.INDEXREADER, docid);
             int leafDocid = docid - leafContext.docBase;
@@ -125,12 +248,53 @@ public class Idx {
                 }
             }
 
-            fieldLengthCache.get(fieldName).put(docid, fieldLength);
+            cache.put(docid, fieldLength);
         }
 
         return fieldLength;
     }
 
+    /**
+     * Get the lengths of the specified field in every document of the
+     * current index, if they were loaded when the index was opened.
+     *
+     * @param fieldName Name of field to access lengths.
+     * @return field lengths indexed by internal docid, or null.
+     */
+    public static int[] getFieldLengths(String fieldName) {
+        return (Idx.fieldLengths == null) ? null : Idx.fieldLengths.get(fieldName);
+    }
+
+    /**
+     * Read the lengths of every field in ALL_FIELDS from the norms of
+     * an index into dense arrays indexed by internal docid.  This is a
+     * single sequential pass over the norms of each segment.
+     *
+     * @param reader An open IndexReader.
+     * @return field name -> field lengths
+     * @throws IOException Error accessing the Lucene index.
+     */
+    static Map<String, int[]> loadFieldLengths(IndexReader reader) throws IOException {
+        Map<String, int[]> ret = new HashMap<>();
+
+        for (String fieldName : ALL_FIELDS) {
+            int[] lengths = new int[reader.maxDoc()];
+
+            for (LeafReaderContext leafContext : reader.leaves()) {
+                NumericDocValues norms = leafContext.reader().getNormValues(fieldName);
+                if (norms == null) continue;
+
+                for (int d = norms.nextDoc(); d != DocIdSetIterator.NO_MORE_DOCS; d = norms.nextDoc()) {
+                    lengths[leafContext.docBase + d] = (int) norms.longValue();
+                }
+            }
+
+            ret.put(fieldName, lengths);
+        }
+
+        return ret;
+    }
+
     /**
      * Get the internal document id for a document specified by its
      * external id, e.g. clueweb09-enwp00-88-09710. If no such document
@@ -214,6 +378,18 @@ public class Idx {
         return Idx.INDEXREADER.numDocs();
     }
 
+    /**
+     * Get a description of the current index that changes when the
+     * index does:  its path and, if known, its version.
+     *
+     * @return The index's signature.
+     */
+    public static String getIndexSignature() {
+        IndexReader reader = Idx.INDEXREADER;
+        long version = (reader instanceof DirectoryReader) ? ((DirectoryReader) reader).getVersion() : -1;
+        return Idx.currentIndexPath + "@" + version;
+    }
+
     /**
      * Get the total number of term occurrences contained in all
      * instances of the specified field in the corpus (e.g., add up the
@@ -251,6 +427,20 @@ public class Idx {
      * @throws IOException              Error accessing the index.
      */
     public static void open(String indexPath) throws IllegalArgumentException, IOException {
+        open(indexPath, false);
+    }
+
+    /**
+     * Open a Lucene index.
+     *
+     * @param indexPath         A directory that contains a Lucene index.
+     * @param denseFieldLengths If true, load the field lengths of every
+     *                          document into memory now, so that
+     *                          getFieldLength never touches the index.
+     * @throws IllegalArgumentException Unable to open the index.
+     * @throws IOException              Error accessing the index.
+     */
+    public static void open(String indexPath, boolean denseFieldLengths) throws IllegalArgumentException, IOException {
 
         IndexReader indexReader;
 
@@ -266,13 +456,53 @@ public class Idx {
 
         openIndexReaders.put(indexPath, indexReader);
 
+        if (denseFieldLengths) {
+            openFieldLengths.put(indexPath, loadFieldLengths(indexReader));
+        }
+
         //  The current index defaults to the first open index.
 
         if (Idx.INDEXREADER == null) {
             Idx.INDEXREADER = indexReader;
+            Idx.currentIndexPath = indexPath;
+            Idx.fieldLengths = openFieldLengths.get(indexPath);
         }
     }
 
+    /**
+     * Load the block-max index of an open Lucene index from its sidecar
+     * file, building the file first if necessary.
+     *
+     * @param indexPath A directory that contains an open Lucene index.
+     * @throws IllegalArgumentException The specified index isn't open.
+     * @throws IOException              Error accessing the index or the sidecar file.
+     */
+    public static void openBlockMaxIndex(String indexPath) throws IllegalArgumentException, IOException {
+
+        IndexReader indexReader = openIndexReaders.get(indexPath);
+
+        if (indexReader == null) {
+            throw new IllegalArgumentException("An index must be open before its block-max index is loaded");
+        }
+
+        if (!openBlockMaxIndexes.containsKey(indexPath)) {
+            openBlockMaxIndexes.put(indexPath, BlockMaxIndex.open(indexPath, indexReader));
+        }
+
+        if (indexPath.equals(Idx.currentIndexPath)) {
+            Idx.blockMaxIndex = openBlockMaxIndexes.get(indexPath);
+        }
+    }
+
+    /**
+     * Get the block-max index of the current index, if it was loaded.
+     *
+     * @return The block-max index, or null.
+     */
+    public static BlockMaxIndex getBlockMaxIndex() {
+        return Idx.blockMaxIndex;
+    }
+
     /**
      * Change the current index to another open Lucene index.
      *
@@ -288,6 +518,10 @@ public class Idx {
         }
 
         Idx.INDEXREADER = indexReader;
+        Idx.currentIndexPath = indexPath;
+        Idx.fieldLengths = openFieldLengths.get(indexPath);
+        Idx.externalIds = openExternalIds.get(indexReader);
+        Idx.blockMaxIndex = openBlockMaxIndexes.get(indexPath);
     }
 
     public static double getDocURLDepth(int docid) throws IOException {
@@ -10,19 +10,32 @@ import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
-import java.util.List;
-import java.util.Vector;
+import java.util.Arrays;
 
 /**
  * This class implements the inverted list data structure and
  * provides methods for accessing and manipulating inverted lists.
  * Its purpose is to provide a simpler view of inverted lists than
  * Lucene's native implementation.
+ * <p>
+ * Postings are stored column-wise in flat primitive arrays, so that a
+ * long inverted list costs a few arrays instead of one object (plus
+ * boxed positions) per posting.  The i'th posting is
+ * (docids[i], tfs[i]), and its locations are
+ * positions[positionOffsets[i]] ... positions[positionOffsets[i + 1] - 1].
+ * Only the first df entries of docids and tfs (and the first df + 1
+ * entries of positionOffsets) are valid.
+ * </p>
  */
 public class InvList {
 
     //  --------------- Constants and variables -----------------------
 
+    /**
+     * Initial capacity of lists that are built with appendPosting.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
     /**
      * Collection term frequency: The number of times that a term
      * occurs across all instances of the specified field.
@@ -41,50 +54,27 @@ public class InvList {
     public String field;
 
     /**
-     * Postings that contain information about the occurrence of the
-     * term in individual documents.
+     * The internal ids of the documents that contain the term in the
+     * specified field, in ascending order.
      */
-    public Vector<DocPosting> postings = new Vector<DocPosting>();
-
-    //  --------------- Nested classes --------------------------------
+    public int[] docids;
 
     /**
-     * Utility class that makes it easier to construct postings.
+     * Term frequency:  The number of times the term occurs in the
+     * specified field of each document.
      */
-    public class DocPosting {
-
-        /**
-         * The internal id of a document that contains the term in
-         * the specified field.
-         */
-        public int docid = 0;
+    public int[] tfs;
 
-        /**
-         * Term frequency:  The number of times the term occurs in
-         * the specified field of the document.
-         */
-        public int tf = 0;
-
-        /**
-         * The locations where the term occurs in the specified field
-         * of the document.
-         */
-        public Vector<Integer> positions = new Vector<Integer>();
-
-        public DocPosting(int d, int... locations) {
-            this.docid = d;
-            this.tf = locations.length;
-            for (int i = 0; i < locations.length; i++)
-                this.positions.add(locations[i]);
-        }
+    /**
+     * The index in positions of the first location of each posting.
+     * positionOffsets[df] is the end of the last posting (i.e., ctf).
+     */
+    public int[] positionOffsets;
 
-        public DocPosting(int d, List<Integer> locations) {
-            this.docid = d;
-            this.tf = locations.size();
-            for (int p = 0; p < locations.size(); p++)
-                this.positions.add(locations.get(p));
-        }
-    }
+    /**
+     * The locations of all postings, packed one posting after another.
+     */
+    public int[] positions;
 
     //  --------------- Methods ---------------------------------------
 
@@ -92,6 +82,7 @@ public class InvList {
      * Constructor.  An empty inverted list. Useful for some query operators.
      */
     public InvList() {
+        this.allocate(INITIAL_CAPACITY, INITIAL_CAPACITY);
     }
 
     /**
@@ -100,6 +91,7 @@ public class InvList {
      * @param fieldString The field that the term occurs in.
      */
     public InvList(String fieldString) {
+        this();
         this.field = new String(fieldString);
     }
 
@@ -111,6 +103,20 @@ public class InvList {
      * @throws IOException Error accessing the Lucene index.
      */
     public InvList(String termString, String fieldString) throws IOException {
+        this(termString, fieldString, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the part of an inverted list from the index whose docids are
+     * in [minDocid, maxDocid).  df and ctf describe that part.
+     *
+     * @param termString  The processed (stemmed, lower-cased, etc) term string.
+     * @param fieldString The field that the term occurs in.
+     * @param minDocid    The smallest docid to include.
+     * @param maxDocid    The docid after the largest docid to include.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public InvList(String termString, String fieldString, int minDocid, int maxDocid) throws IOException {
 
         //  Store the field name.  This is used by other query operators.
 
@@ -121,13 +127,30 @@ public class InvList {
         BytesRef termBytes = new BytesRef(termString);
         Term term = new Term(fieldString, termBytes);
 
-        if (Idx.INDEXREADER.docFreq(term) < 1) return;
+        //  The index knows the final df and ctf of the whole list, so its
+        //  arrays can be allocated once, at their final size.  A part of
+        //  the list grows as needed.
+
+        boolean wholeList = (minDocid <= 0) && (maxDocid >= Idx.INDEXREADER.maxDoc());
+        int termDf = Idx.INDEXREADER.docFreq(term);
+        long termCtf = (termDf < 1) ? 0 : Idx.INDEXREADER.totalTermFreq(term);
+        if (wholeList) {
+            this.allocate(termDf, (int) termCtf);
+        } else {
+            this.allocate(INITIAL_CAPACITY, INITIAL_CAPACITY);
+        }
+
+        if (termDf < 1) return;
 
         //  Lucene indexes have segments, so postings must be retrieved
-        //  from each segment.  Some segments may have no postings.
+        //  from each segment.  Some segments may have no postings, or
+        //  may be outside of the docid range.
 
         for (LeafReaderContext context : Idx.INDEXREADER.leaves()) {
 
+            int docBase = context.docBase;
+            if ((docBase >= maxDocid) || (docBase + context.reader().maxDoc() <= minDocid)) continue;
+
             PostingsEnum postings = context.reader().postings(term, PostingsEnum.POSITIONS);
 
             if (postings != null) {
@@ -137,54 +160,149 @@ public class InvList {
                 //  operators such as #SYN and #NEAR/n to be insulated from the
                 //  details of Lucene inverted list implementations.
 
-                while (postings.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+                int d = (minDocid > docBase) ? postings.advance(minDocid - docBase) : postings.nextDoc();
+
+                for (; (d != DocIdSetIterator.NO_MORE_DOCS) && (docBase + d < maxDocid); d = postings.nextDoc()) {
 
-                    int docid = context.docBase + postings.docID();
                     int tf = postings.freq();
-                    int[] positions = new int[tf];
+                    this.ensureCapacity(this.df + 1, this.ctf + tf);
+
+                    this.docids[this.df] = docBase + d;
+                    this.tfs[this.df] = tf;
 
                     for (int p = 0; p < tf; p++)
-                        positions[p] = postings.nextPosition();
+                        this.positions[this.ctf + p] = postings.nextPosition();
 
-                    this.postings.add(new DocPosting(docid, positions));
                     this.df++;
                     this.ctf += tf;
+                    this.positionOffsets[this.df] = this.ctf;
                 }
             }
         }
     }
 
+    /**
+     * Allocate the posting arrays.
+     *
+     * @param numPostings  The number of postings to make room for.
+     * @param numPositions The number of locations to make room for.
+     */
+    private void allocate(int numPostings, int numPositions) {
+        this.docids = new int[numPostings];
+        this.tfs = new int[numPostings];
+        this.positionOffsets = new int[numPostings + 1];
+        this.positions = new int[numPositions];
+    }
+
+    /**
+     * Grow the posting arrays, if necessary, so that they can hold the
+     * specified number of postings and locations.
+     *
+     * @param numPostings  The number of postings that must fit.
+     * @param numPositions The number of locations that must fit.
+     */
+    private void ensureCapacity(int numPostings, int numPositions) {
+        if (numPostings > this.docids.length) {
+            int capacity = Math.max(numPostings, 2 * this.docids.length);
+            this.docids = Arrays.copyOf(this.docids, capacity);
+            this.tfs = Arrays.copyOf(this.tfs, capacity);
+            this.positionOffsets = Arrays.copyOf(this.positionOffsets, capacity + 1);
+        }
+
+        if (numPositions > this.positions.length) {
+            int capacity = Math.max(numPositions, 2 * this.positions.length);
+            this.positions = Arrays.copyOf(this.positions, capacity);
+        }
+    }
+
     /**
      * Append a posting to the posting list.  Posting must be appended
      * in docid order, otherwise this method fails.
      *
      * @param docid     The internal document id of the posting.
-     * @param positions A list of positions where the term occurs.
+     * @param positions An array whose first tf entries are the
+     *                  (sorted) positions where the term occurs.
+     * @param tf        The number of positions to copy.
      * @return true if the posting was added successfully, otherwise false.
      */
-    public boolean appendPosting(int docid, List<Integer> positions) {
+    public boolean appendPosting(int docid, int[] positions, int tf) {
 
         //  A posting can only be appended if its docid is greater than
         //  the last docid.
 
-        if ((this.df > 1) && (this.postings.get(this.df - 1).docid >= docid)) return false;
+        if ((this.df > 0) && (this.docids[this.df - 1] >= docid)) return false;
+
+        this.ensureCapacity(this.df + 1, this.ctf + tf);
 
-        DocPosting p = new DocPosting(docid, positions);
+        this.docids[this.df] = docid;
+        this.tfs[this.df] = tf;
+        System.arraycopy(positions, 0, this.positions, this.ctf, tf);
 
-        this.postings.add(p);
         this.df++;
-        this.ctf += p.tf;
+        this.ctf += tf;
+        this.positionOffsets[this.df] = this.ctf;
         return true;
     }
 
+    /**
+     * Find the first posting, at or after index from, whose docid is
+     * at least docid.  The search gallops forward (1, 2, 4, ... postings)
+     * from the start index until it overshoots, then binary searches
+     * the last step, so skipping k postings costs O(log k) comparisons
+     * instead of k.  Nearby targets are found almost immediately.
+     *
+     * @param from  The index of the posting to start from.
+     * @param docid An internal document id.
+     * @return The index of the posting, or df if there is none.
+     */
+    public int findDocid(int from, int docid) {
+        if ((from >= this.df) || (this.docids[from] >= docid)) return from;
+
+        //  Invariant:  docids[lo] < docid, and hi == df or docids[hi] >= docid.
+
+        int lo = from;
+        int step = 1;
+        int hi = lo + step;
+
+        while ((hi < this.df) && (this.docids[hi] < docid)) {
+            lo = hi;
+            step <<= 1;
+            hi = lo + step;
+        }
+
+        if (hi > this.df) hi = this.df;
+
+        while (lo + 1 < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (this.docids[mid] < docid) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+
+        return hi;
+    }
+
     /**
      * Get the n'th document id from the inverted list.
      *
-     * @param docid The index of the requested document.
+     * @param n The index of the requested document.
      * @return The internal document id.
      */
-    public int getDocid(int docid) {
-        return this.postings.get(docid).docid;
+    public int getDocid(int n) {
+        return this.docids[n];
+    }
+
+    /**
+     * Get the j'th location in the n'th document of the inverted list.
+     *
+     * @param n The index of the requested document.
+     * @param j The index of the requested location within the document.
+     * @return The location.
+     */
+    public int getPosition(int n, int j) {
+        return this.positions[this.positionOffsets[n] + j];
     }
 
     /**
@@ -194,7 +312,19 @@ public class InvList {
      * @return The document's term frequency.
      */
     public int getTf(int n) {
-        return this.postings.get(n).tf;
+        return this.tfs[n];
+    }
+
+    /**
+     * Estimate the amount of heap used by the posting arrays.  With 4
+     * bytes per int this is about 12 bytes per posting plus 4 bytes per
+     * location.
+     *
+     * @return The approximate size of the inverted list, in bytes.
+     */
+    public long ramBytesUsed() {
+        long ints = (long) this.docids.length + this.tfs.length + this.positionOffsets.length + this.positions.length;
+        return 4 * ints + 4 * 16;   // 4 array headers
     }
 
     /**
@@ -205,10 +335,10 @@ public class InvList {
         System.out.println("df:  " + this.df + ", ctf: " + this.ctf);
 
         for (int i = 0; i < this.df; i++) {
-            System.out.print("docid:  " + this.postings.elementAt(i).docid + ", tf: " + this.postings.elementAt(i).tf + ", locs: ");
+            System.out.print("docid:  " + this.docids[i] + ", tf: " + this.tfs[i] + ", locs: ");
 
-            for (int j = 0; j < this.postings.elementAt(i).tf; j++) {
-                System.out.print(this.postings.elementAt(i).positions.elementAt(j) + " ");
+            for (int j = 0; j < this.tfs[i]; j++) {
+                System.out.print(this.getPosition(i, j) + " ");
             }
 
             System.out.println();
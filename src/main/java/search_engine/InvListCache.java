@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import java.io.IOException;
+
+/**
+ * A cache of inverted lists read from the index, so that a term that
+ * occurs in many queries (or in both the original and the expanded
+ * query of PRF) is decoded once instead of once per query.
+ * <p>
+ * Lists are keyed by the index, field, term, and docid range, and are
+ * kept in least-recently-used order up to a budget of bytes
+ * (InvList.ramBytesUsed; see LruCache).  Cached lists are shared by
+ * every query operator that reads them, so they must not be modified;
+ * TERM operators only read their lists.
+ * </p>
+ */
+public class InvListCache extends LruCache<InvList> {
+
+    //  --------------- Constants and variables -----------------------
+
+    private static final SharedCache<InvListCache> shared = new SharedCache<>();
+
+    //  --------------- Methods ---------------------------------------
+
+    private InvListCache(long maxBytes) {
+        super(maxBytes, InvList::ramBytesUsed, "lists");
+    }
+
+    /**
+     * Get the process's cache (see SharedCache).
+     *
+     * @param maxBytes The memory budget, in bytes.
+     * @return The cache.
+     */
+    public static InvListCache open(long maxBytes) {
+        return shared.open(maxBytes, () -> new InvListCache(maxBytes));
+    }
+
+    /**
+     * Get the part of an inverted list whose docids are in
+     * [minDocid, maxDocid), reading it from the index if it isn't
+     * cached.
+     *
+     * @param term     The processed (stemmed, lower-cased, etc) term string.
+     * @param field    The field that the term occurs in.
+     * @param minDocid The smallest docid to include.
+     * @param maxDocid The docid after the largest docid to include.
+     * @return The inverted list.  It must not be modified.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public InvList get(String term, String field, int minDocid, int maxDocid) throws IOException {
+        String key = Idx.getIndexSignature() + "\n" + field + "\n" + term + "\n" + minDocid + "\n" + maxDocid;
+        return this.get(key, () -> new InvList(term, field, minDocid, maxDocid));
+    }
+}
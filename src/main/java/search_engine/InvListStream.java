@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A forward-only view of a term's inverted list that reads Lucene's
+ * postings directly instead of copying them into an InvList.
+ * <p>
+ * The stream walks the index segments (leaves) in docid order.
+ * advanceTo uses PostingsEnum.advance, so Lucene's skip lists are used
+ * to jump over postings that a conjunctive parent does not need.
+ * Locations are decoded lazily, and only for documents whose locations
+ * are requested; if the stream is opened without positions, only
+ * docids and term frequencies are read.
+ * </p><p>
+ * df and ctf come from the index statistics, so they are available
+ * before any posting is read.
+ * </p>
+ */
+public class InvListStream {
+
+    //  --------------- Constants and variables -----------------------
+
+    /**
+     * The docid of an exhausted stream.
+     */
+    public static final int NO_MORE_DOCS = DocIdSetIterator.NO_MORE_DOCS;
+
+    /**
+     * Collection term frequency: The number of times that a term
+     * occurs across all instances of the specified field.
+     */
+    public final int ctf;
+
+    /**
+     * Document frequency: The number of documents that have the term
+     * in the specified field.
+     */
+    public final int df;
+
+    /**
+     * The field covered by the inverted list.
+     */
+    public final String field;
+
+    private final Term term;
+    private final int flags;
+    private final List<LeafReaderContext> leaves;
+    private final int maxDocid;     // The stream ends before this docid
+
+    private int leafIndex = -1;
+    private int docBase = 0;
+    private PostingsEnum postings = null;
+
+    private int docid = -1;         // The current (global) docid
+    private int tf = 0;
+    private int[] positions = new int[16];
+    private int positionsDecoded = 0;
+
+    //  --------------- Methods ---------------------------------------
+
+    /**
+     * Open a stream over a term's postings and position it on the first
+     * posting.
+     *
+     * @param termString    The processed (stemmed, lower-cased, etc) term string.
+     * @param fieldString   The field that the term occurs in.
+     * @param withPositions True if locations will be requested.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public InvListStream(String termString, String fieldString, boolean withPositions) throws IOException {
+        this(termString, fieldString, withPositions, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Open a stream over the postings of a term whose docids are in
+     * [minDocid, maxDocid), and position it on the first one.  df and ctf
+     * still describe the whole inverted list.
+     *
+     * @param termString    The processed (stemmed, lower-cased, etc) term string.
+     * @param fieldString   The field that the term occurs in.
+     * @param withPositions True if locations will be requested.
+     * @param minDocid      The smallest docid to include.
+     * @param maxDocid      The docid after the largest docid to include.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public InvListStream(String termString, String fieldString, boolean withPositions,
+                         int minDocid, int maxDocid) throws IOException {
+        this.field = new String(fieldString);
+        this.maxDocid = maxDocid;
+        this.term = new Term(fieldString, new BytesRef(termString));
+        this.flags = withPositions ? PostingsEnum.POSITIONS : PostingsEnum.FREQS;
+        this.leaves = Idx.INDEXREADER.leaves();
+
+        this.df = Idx.INDEXREADER.docFreq(this.term);
+        this.ctf = (this.df < 1) ? 0 : (int) Idx.INDEXREADER.totalTermFreq(this.term);
+
+        if (this.df < 1) {
+            this.docid = NO_MORE_DOCS;
+        } else {
+            this.advanceTo(Math.max(minDocid, 0));
+        }
+    }
+
+    /**
+     * Move to the first posting whose docid is at least docid.  The
+     * stream never moves backwards.
+     *
+     * @param target An internal document id.
+     */
+    public void advanceTo(int target) {
+        if (this.docid >= target) return;
+
+        try {
+            while (true) {
+                if (this.postings != null) {
+                    int localTarget = target - this.docBase;
+                    int d = (localTarget > this.postings.docID()) ?
+                            this.postings.advance(localTarget) : this.postings.nextDoc();
+
+                    if ((d != DocIdSetIterator.NO_MORE_DOCS) && (this.docBase + d < this.maxDocid)) {
+                        this.docid = this.docBase + d;
+                        this.tf = this.postings.freq();
+                        this.positionsDecoded = 0;
+                        return;
+                    }
+                }
+
+                //  This segment is exhausted (or the range ended).  Try the next one.
+
+                if ((++this.leafIndex >= this.leaves.size()) ||
+                        (this.leaves.get(this.leafIndex).docBase >= this.maxDocid)) {
+                    this.postings = null;
+                    this.docid = NO_MORE_DOCS;
+                    return;
+                }
+
+                LeafReaderContext context = this.leaves.get(this.leafIndex);
+                this.docBase = context.docBase;
+                this.postings = context.reader().postings(this.term, this.flags);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Move beyond the specified docid.
+     *
+     * @param docid An internal document id.
+     */
+    public void advancePast(int docid) {
+        if (docid < NO_MORE_DOCS) this.advanceTo(docid + 1);
+    }
+
+    /**
+     * Move beyond any possible document.
+     */
+    public void finish() {
+        this.postings = null;
+        this.leafIndex = this.leaves.size();
+        this.docid = NO_MORE_DOCS;
+    }
+
+    /**
+     * Get the docid of the current posting, or NO_MORE_DOCS.
+     *
+     * @return The internal document id.
+     */
+    public int docid() {
+        return this.docid;
+    }
+
+    /**
+     * Indicates whether the stream points to a posting.
+     *
+     * @return True if the stream is not exhausted.
+     */
+    public boolean hasDoc() {
+        return this.docid != NO_MORE_DOCS;
+    }
+
+    /**
+     * Get the j'th location of the current posting, decoding locations
+     * up to j if they haven't been decoded yet.
+     *
+     * @param j The index of the requested location (0 .. tf-1).
+     * @return The location.
+     */
+    public int getPosition(int j) {
+        if (j >= this.positionsDecoded) {
+            if (j >= this.positions.length) {
+                this.positions = Arrays.copyOf(this.positions, Math.max(this.tf, 2 * this.positions.length));
+            }
+
+            try {
+                while (this.positionsDecoded <= j) {
+                    this.positions[this.positionsDecoded++] = this.postings.nextPosition();
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        return this.positions[j];
+    }
+
+    /**
+     * Get the term frequency of the current posting.
+     *
+     * @return The term frequency (tf).
+     */
+    public int tf() {
+        return this.tf;
+    }
+}
@@ -24,4 +24,9 @@ public class LTR extends CachedRetrievalModel {
     public String defaultQrySopName() {
         return bm25.defaultQrySopName(); // uses bm25 to create initial ranking
     }
+
+    @Override
+    public String getSignature() {
+        return "LTR(" + bm25.getSignature() + "," + indri.getSignature() + ")";
+    }
 }
@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes the BM25, Indri, and term overlap features of a query for
+ * document fields in one pass over the query's stems.  Each stem is
+ * looked up in the field's TermVector once, for all three features, and
+ * the document's field length is read once.  The statistics that don't
+ * depend on the document (df, ctf, and the parts of the scores computed
+ * from them) are computed once per query, when the kernel is built.
+ * <p>
+ * The BM25 score is that of #SUM of the stems, and the Indri score is
+ * that of #AND of the stems, or 0 if the field contains none of them.
+ * The term overlap is the number of stems that the field contains.  A
+ * kernel is only read after it is built, so threads may share it.
+ * </p>
+ */
+public class LTRFeatureKernel {
+
+    //  --------------- Constants and variables -----------------------
+
+    /**
+     * Indexes of the features in the array filled by score.
+     */
+    public static final int BM25_SCORE = 0;
+    public static final int INDRI_SCORE = 1;
+    public static final int TERM_OVERLAP = 2;
+
+    private final String[] stems;
+    private final Map<String, FieldStats> fieldStats = new HashMap<>();
+
+    /**
+     * The document-independent statistics of the query's stems in one
+     * field, indexed like stems.
+     */
+    private static final class FieldStats {
+        private final double bm25K1;
+        private final double bm25B;
+        private final double bm25OneMinusB;
+        private final double bm25AvgDocLen;
+        private final double[] bm25RsjWeight;
+
+        private final double indriMu;
+        private final double indriOneMinusLambda;
+        private final double[] indriMuTimesPMLE;             // mu * pMLE
+        private final double[] indriLambdaTimesPMLE;         // lambda * pMLE
+        private final double[] indriMuTimesDefaultPMLE;      // mu * pMLE, with ctf 0 smoothed to 0.5
+        private final double[] indriLambdaTimesDefaultPMLE;  // lambda * pMLE, with ctf 0 smoothed to 0.5
+
+        private FieldStats(String[] stems, BM25 bm25, Indri indri, String field) throws IOException {
+            long N = Idx.getNumDocs();
+
+            this.bm25K1 = bm25.getK1();
+            this.bm25B = bm25.getB();
+            this.bm25OneMinusB = 1 - bm25.getB();
+            this.bm25AvgDocLen = bm25.fieldTotalLengths.get(field) / (double) bm25.fieldDocCounts.get(field);
+            this.bm25RsjWeight = new double[stems.length];
+
+            this.indriMu = indri.getMu();
+            this.indriOneMinusLambda = 1 - indri.getLambda();
+            this.indriMuTimesPMLE = new double[stems.length];
+            this.indriLambdaTimesPMLE = new double[stems.length];
+            this.indriMuTimesDefaultPMLE = new double[stems.length];
+            this.indriLambdaTimesDefaultPMLE = new double[stems.length];
+
+            for (int i = 0; i < stems.length; i++) {
+                int df = (int) Idx.getDocFreq(field, stems[i]);
+                this.bm25RsjWeight[i] = Math.max(0, Math.log((N - df + 0.5) / (df + 0.5)));
+
+                long ctf = Idx.getTotalTermFreq(field, stems[i]);
+                double pMLE = (double) ctf / indri.fieldTotalLengths.get(field);
+                double defaultPMLE = ((ctf == 0) ? 0.5 : ctf) / indri.fieldTotalLengths.get(field);
+                this.indriMuTimesPMLE[i] = indri.getMu() * pMLE;
+                this.indriLambdaTimesPMLE[i] = indri.getLambda() * pMLE;
+                this.indriMuTimesDefaultPMLE[i] = indri.getMu() * defaultPMLE;
+                this.indriLambdaTimesDefaultPMLE[i] = indri.getLambda() * defaultPMLE;
+            }
+        }
+    }
+
+    //  --------------- Methods ---------------------------------------
+
+    /**
+     * Compute the statistics of a query's stems in some fields.
+     *
+     * @param stems  The query's stems.
+     * @param bm25   The BM25 model.
+     * @param indri  The Indri model.
+     * @param fields The fields that will be scored.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public LTRFeatureKernel(String[] stems, BM25 bm25, Indri indri, String... fields) throws IOException {
+        this.stems = stems;
+        for (String field : fields) {
+            this.fieldStats.put(field, new FieldStats(stems, bm25, indri, field));
+        }
+    }
+
+    /**
+     * @return The query's stems.
+     */
+    public String[] getStems() {
+        return this.stems;
+    }
+
+    /**
+     * Compute the features of a document field.  They are NaN if the
+     * field has no term vector.
+     *
+     * @param termVector The term vector of the field, which must be one of
+     *                   the kernel's fields.
+     * @param features   The BM25 score, Indri score, and term overlap are
+     *                   stored at BM25_SCORE, INDRI_SCORE, and TERM_OVERLAP.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public void score(TermVector termVector, double[] features) throws IOException {
+        if (termVector.positionsLength() == 0 && termVector.stemsLength() == 0) {
+            features[BM25_SCORE] = Double.NaN;
+            features[INDRI_SCORE] = Double.NaN;
+            features[TERM_OVERLAP] = Double.NaN;
+            return;
+        }
+
+        FieldStats s = this.fieldStats.get(termVector.fieldName);
+        long docLen = Idx.getFieldLength(termVector.fieldName, termVector.docId);
+
+        double bm25 = 0;
+        double indri = 0.0;
+        double overlap = 0;
+        for (int i = 0; i < this.stems.length; i++) {
+            int stemIdx = termVector.indexOfStem(this.stems[i]);
+
+            double pDirichlet;
+            double indriScore;
+            if (stemIdx == -1) {
+                pDirichlet = (
+                        0 + s.indriMuTimesDefaultPMLE[i]
+                ) / (
+                        docLen + s.indriMu
+                );
+                if (Double.isNaN(pDirichlet)) pDirichlet = 0.0; // in case both mu and docLen are 0
+                indriScore = s.indriOneMinusLambda * pDirichlet + s.indriLambdaTimesDefaultPMLE[i];
+            } else {
+                int tf = termVector.stemFreq(stemIdx);
+
+                double termWeight = tf / (
+                        tf + s.bm25K1 * (s.bm25OneMinusB + s.bm25B * docLen / s.bm25AvgDocLen)
+                );
+                bm25 += s.bm25RsjWeight[i] * termWeight;
+
+                pDirichlet = (
+                        tf + s.indriMuTimesPMLE[i]
+                ) / (
+                        docLen + s.indriMu
+                );
+                if (Double.isNaN(pDirichlet)) pDirichlet = 0.0; // in case both mu and docLen are 0
+                indriScore = s.indriOneMinusLambda * pDirichlet + s.indriLambdaTimesPMLE[i];
+
+                ++overlap;
+            }
+
+            indri += Math.log(indriScore);  // avoid precision problem
+        }
+
+        features[BM25_SCORE] = bm25;
+        features[INDRI_SCORE] = (overlap == 0) ? 0 : Math.exp(indri / this.stems.length);
+        features[TERM_OVERLAP] = overlap;
+    }
+}
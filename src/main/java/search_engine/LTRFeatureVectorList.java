@@ -1,147 +1,287 @@
 package search_engine;
 
-import java.util.*;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
 
+/**
+ * The feature vectors of the documents of one query, for learning to
+ * rank.  Features are stored column-wise in primitive arrays:
+ * column f holds feature f of every document, so normalizing a feature
+ * is a pass over one double[], and no value is boxed.  Disabled
+ * features have no column.
+ */
 public class LTRFeatureVectorList {
 
-    public class LTRFeatureVectorEntry {
-        public int docid;
-        public String externalId;
-        public Map<Integer, Double> featVector;
-        public int qryID;
-        public int relevance;
-
-        private LTRFeatureVectorEntry(
-                int qryID,
-                int internalDocid,
-                String externalId,
-                Map<Integer, Double> featVector,
-                int relevance
-        ) {
-            this.qryID = qryID;
-            this.docid = internalDocid;
-            this.externalId = externalId;
-            this.featVector = featVector;
-            this.relevance = relevance;
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Whether each feature is computed.  Disabled features are not
+     * written.
+     */
+    private final boolean[] enabled;
+
+    /**
+     * columns[f][i] is feature f of the i'th document, or null if
+     * feature f is disabled.
+     */
+    private final double[][] columns;
+
+    private int size = 0;
+    private int[] qryIDs;
+    private int[] docids;
+    private String[] externalIds;
+    private int[] relevances;
+
+    /**
+     * An empty list.
+     *
+     * @param enabled Whether each feature is computed; its length is
+     *                the number of features.
+     */
+    public LTRFeatureVectorList(boolean[] enabled) {
+        this.enabled = enabled.clone();
+        this.columns = new double[enabled.length][];
+        this.allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        this.qryIDs = (this.qryIDs == null) ? new int[capacity] : Arrays.copyOf(this.qryIDs, capacity);
+        this.docids = (this.docids == null) ? new int[capacity] : Arrays.copyOf(this.docids, capacity);
+        this.externalIds = (this.externalIds == null) ? new String[capacity] : Arrays.copyOf(this.externalIds, capacity);
+        this.relevances = (this.relevances == null) ? new int[capacity] : Arrays.copyOf(this.relevances, capacity);
+
+        for (int f = 0; f < this.columns.length; ++f) {
+            if (!this.enabled[f]) continue;
+
+            //  A feature that isn't set is NaN, i.e., missing.
+
+            int oldCapacity = (this.columns[f] == null) ? 0 : this.columns[f].length;
+            this.columns[f] = (this.columns[f] == null) ? new double[capacity] : Arrays.copyOf(this.columns[f], capacity);
+            Arrays.fill(this.columns[f], oldCapacity, capacity, Double.NaN);
         }
     }
 
     /**
-     * A list of document ids and features.
+     * Append a document to the list.  Its features are missing (NaN)
+     * until they are set.
+     *
+     * @param qryID         The query id.
+     * @param docid         The internal document id.
+     * @param externalDocID The external document id.
+     * @param relevance     The document's relevance label.
+     * @return The index of the document in the list.
+     */
+    public int add(int qryID, int docid, String externalDocID, int relevance) {
+        if (this.size == this.docids.length) this.allocate(2 * this.size);
+
+        this.qryIDs[this.size] = qryID;
+        this.docids[this.size] = docid;
+        this.externalIds[this.size] = externalDocID;
+        this.relevances[this.size] = relevance;
+        return this.size++;
+    }
+
+    /**
+     * Set a feature of the n'th document.  Disabled features are ignored.
+     *
+     * @param n       The index of the document.
+     * @param feature The feature index (0-based).
+     * @param value   The feature value; NaN if it is missing.
+     */
+    public void set(int n, int feature, double value) {
+        if (this.enabled[feature]) this.columns[feature][n] = value;
+    }
+
+    /**
+     * Get a feature of the n'th document.
+     *
+     * @param n       The index of the document.
+     * @param feature The feature index (0-based).
+     * @return The feature value, or NaN if it is missing or disabled.
+     */
+    public double get(int n, int feature) {
+        return this.enabled[feature] ? this.columns[feature][n] : Double.NaN;
+    }
+
+    /**
+     * @param feature The feature index (0-based).
+     * @return Whether the feature is computed.
+     */
+    public boolean isEnabled(int feature) {
+        return this.enabled[feature];
+    }
+
+    /**
+     * @return The number of features, including disabled ones.
      */
-    private List<LTRFeatureVectorEntry> feats = new ArrayList<>();
+    public int numFeatures() {
+        return this.enabled.length;
+    }
 
     /**
-     * Normalize feature vectors in this list across entries.
+     * Normalize each feature to [0, 1] across the documents of the list,
+     * i.e., (value - min) / (max - min).  Missing (NaN) values are
+     * ignored when finding min and max, and become 0, as do the values
+     * of a feature that has the same value for every document.
      */
     public void normalize() {
         int size = size();
         assert size > 0;
-        int qid = get(0).qryID;
-
-        Map<Integer, Double> minVals = new HashMap<>();
-        Map<Integer, Double> maxVals = new HashMap<>();
         for (int i = 0; i < size; ++i) {
-            assert qid == get(i).qryID;
-
-            var vec = get(i).featVector;
-            for (int j : vec.keySet()) {
-                double val = vec.get(j);
-                if (Double.isNaN(val)) continue;
-
-                if (!minVals.containsKey(j)) {
-                    minVals.put(j, val);
-                    maxVals.put(j, val);
-                } else {
-                    minVals.put(j, Math.min(minVals.get(j), val));
-                    maxVals.put(j, Math.max(maxVals.get(j), val));
-                }
-            }
+            assert this.qryIDs[i] == this.qryIDs[0];
         }
 
-        for (int i = 0; i < size; ++i) {
-            var vec = get(i).featVector;
-            for (int j : vec.keySet()) {
-                double min = minVals.get(j);
-                double max = maxVals.get(j);
-                double val = vec.get(j);
-
-                if (max == min || Double.isNaN(val))
-                    vec.put(j, 0.0);
-                else
-                    vec.put(j, (val - min) / (max - min));
+        for (double[] column : this.columns) {
+            if (column == null) continue;
+
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < size; ++i) {
+                double val = column[i];
+                if (val < min) min = val;   // false for NaN
+                if (val > max) max = val;
+            }
+
+            //  If every value is missing, min > max, and every value becomes 0.
+
+            double range = max - min;
+            for (int i = 0; i < size; ++i) {
+                double val = column[i];
+                column[i] = (max == min || Double.isNaN(val) || range < 0) ? 0.0 : (val - min) / range;
             }
         }
     }
 
     /**
-     * Append a document feature to a feature list.
+     * Get the external docid of the n'th entry.
+     *
+     * @param n The index of the requested document.
+     * @return The external document id.
      */
-    public void add(
-            int qryID,
-            int docid,
-            String externalDocID,
-            Map<Integer, Double> feature,
-            int relevance
-    ) throws Exception {
-        feats.add(new LTRFeatureVectorEntry(qryID, docid, externalDocID, feature, relevance));
+    public String getExternalDocid(int n) {
+        return this.externalIds[n];
     }
 
     /**
-     * Get the external docid of the n'th entry.
+     * Get the internal docid of the n'th entry.
      *
      * @param n The index of the requested document.
      * @return The internal document id.
      */
-    public String getExternalDocid(int n) {
-        return this.feats.get(n).externalId;
+    public int getDocid(int n) {
+        return this.docids[n];
     }
 
     public int getRelevance(int n) {
-        return this.feats.get(n).relevance;
+        return this.relevances[n];
     }
 
     /**
-     * Get the feature of the n'th entry.
+     * Get the size of the feature list.
      *
-     * @param n The index of the requested document feature.
-     * @return The document's feature.
+     * @return The number of documents.
      */
-    public Map<Integer, Double> getDocidFeats(int n) {
-        return this.feats.get(n).featVector;
-    }
-
-    public LTRFeatureVectorEntry get(int n) {
-        return this.feats.get(n);
+    public int size() {
+        return this.size;
     }
 
     /**
-     * Get the size of the feature list.
-     *
-     * @return The size of the posting list.
+     * Sort the list by qryID, then external document id.  The sort is
+     * stable.
      */
-    public int size() {
-        return this.feats.size();
+    public void sort() {
+        int[] order = new int[this.size];
+        for (int i = 0; i < this.size; ++i) order[i] = i;
+        this.mergeSort(order, new int[this.size], 0, this.size);
+
+        int[] qryIDs = new int[this.qryIDs.length];
+        int[] docids = new int[this.docids.length];
+        String[] externalIds = new String[this.externalIds.length];
+        int[] relevances = new int[this.relevances.length];
+        for (int i = 0; i < this.size; ++i) {
+            qryIDs[i] = this.qryIDs[order[i]];
+            docids[i] = this.docids[order[i]];
+            externalIds[i] = this.externalIds[order[i]];
+            relevances[i] = this.relevances[order[i]];
+        }
+        this.qryIDs = qryIDs;
+        this.docids = docids;
+        this.externalIds = externalIds;
+        this.relevances = relevances;
+
+        for (int f = 0; f < this.columns.length; ++f) {
+            if (this.columns[f] == null) continue;
+
+            double[] column = new double[this.columns[f].length];
+            for (int i = 0; i < this.size; ++i) column[i] = this.columns[f][order[i]];
+            this.columns[f] = column;
+        }
     }
 
     /**
-     * Compare two LTRFeatureVectorEntry objects. Sort by qryID, then external docid.
+     * Sort order[from, to) by qryID, then external document id, keeping
+     * equal documents in order.  tmp is scratch space as long as order.
      */
-    public class ScoreListComparator implements Comparator<LTRFeatureVectorEntry> {
-        @Override
-        public int compare(LTRFeatureVectorEntry s1, LTRFeatureVectorEntry s2) {
-            if (s1.qryID < s2.qryID)
-                return -1;
-            else if (s1.qryID > s2.qryID)
-                return 1;
-            return s1.externalId.compareTo(s2.externalId); // lexicographical comparison of external id
+    private void mergeSort(int[] order, int[] tmp, int from, int to) {
+        if (to - from < 2) return;
+
+        int mid = (from + to) >>> 1;
+        this.mergeSort(order, tmp, from, mid);
+        this.mergeSort(order, tmp, mid, to);
+        if (this.compare(order[mid - 1], order[mid]) <= 0) return;   // already in order
+
+        System.arraycopy(order, from, tmp, from, to - from);
+        int i = from, j = mid;
+        for (int k = from; k < to; ++k) {
+            if (j >= to || (i < mid && this.compare(tmp[i], tmp[j]) <= 0)) {
+                order[k] = tmp[i++];
+            } else {
+                order[k] = tmp[j++];
+            }
         }
     }
 
+    private int compare(int a, int b) {
+        int c = Integer.compare(this.qryIDs[a], this.qryIDs[b]);
+        return (c != 0) ? c : this.externalIds[a].compareTo(this.externalIds[b]);
+    }
+
     /**
-     * Sort the list by external document id.
+     * Write the list in SVMrank / RankLib format, one line per document:
+     * "relevance qid:qid 1:v1 2:v2 ... # externalId".  Missing values
+     * are written as 0.  A disabled feature between two enabled ones is
+     * written as 0; trailing disabled features are omitted.
+     *
+     * @param writer Where to write the lines.
+     * @param qid    The query id.
+     * @throws IOException Error writing.
      */
-    public void sort() {
-        this.feats.sort(new ScoreListComparator());
+    public void write(Writer writer, int qid) throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        for (int i = 0; i < this.size; ++i) {
+            line.setLength(0);
+            line.append(this.relevances[i]).append(" qid:").append(qid).append(' ');
+
+            int prev = 0;
+            for (int f = 0; f < this.columns.length; ++f) {
+                if (this.columns[f] == null) continue;
+
+                // fill in inconsecutive features with 0
+                for (int j = prev + 1; j < f; ++j) {
+                    line.append(j + 1).append(":0 ");
+                }
+
+                double val = this.columns[f][i];
+                if (Double.isNaN(val)) val = 0;
+                line.append(f + 1).append(':').append(val).append(' ');
+
+                prev = f;
+            }
+
+            line.append("# ").append(this.externalIds[i]).append('\n');
+            writer.write(line.toString());
+        }
     }
 }
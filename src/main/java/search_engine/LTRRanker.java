@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import ciir.umass.edu.learning.DataPoint;
+import ciir.umass.edu.learning.Ranker;
+import ciir.umass.edu.learning.RankerFactory;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A trained learning-to-rank model that scores LTRFeatureVectorLists in
+ * this process, instead of writing them to a file, running RankLib or
+ * svm_rank_classify on it, and reading the scores back.
+ * <p>
+ * The scores are the scores that the toolkits would write.  Both
+ * toolkits read feature values as floats, so the features are rounded
+ * to float before they are scored, and svm_rank_classify writes 8
+ * significant digits, so SVMrank scores are rounded to 8 significant
+ * digits.  Only linear SVMrank models are supported.
+ * </p>
+ */
+public abstract class LTRRanker {
+
+    /**
+     * Load a trained model.
+     *
+     * @param toolkit   The toolkit that trained it, "RankLib" or "SVMRank".
+     * @param modelPath The model file.
+     * @return The model.
+     * @throws IOException Error reading the model file, or the model isn't supported.
+     */
+    public static LTRRanker load(String toolkit, String modelPath) throws IOException {
+        if (toolkit.equals("RankLib")) {
+            return new RankLibRanker(modelPath);
+        } else if (toolkit.equals("SVMRank")) {
+            return new SVMRankRanker(modelPath);
+        } else {
+            throw new IllegalArgumentException("Unknown LTR toolkit: " + toolkit);
+        }
+    }
+
+    /**
+     * Score the documents of a list.
+     *
+     * @param feats The feature vectors.
+     * @return The scores, indexed like feats.
+     */
+    public abstract double[] score(LTRFeatureVectorList feats);
+
+    /**
+     * Get the n'th feature vector of a list as the toolkits read it from
+     * a feature file: 1-based, rounded to float, with missing and
+     * disabled features 0.
+     */
+    private static float[] getFeatureVector(LTRFeatureVectorList feats, int n) {
+        float[] vec = new float[feats.numFeatures() + 1];
+        for (int f = 0; f < feats.numFeatures(); ++f) {
+            double val = feats.get(n, f);
+            if (!Double.isNaN(val)) vec[f + 1] = (float) val;
+        }
+        return vec;
+    }
+
+    /**
+     * A RankLib model of any type.
+     */
+    private static final class RankLibRanker extends LTRRanker {
+        private final Ranker ranker;
+
+        private RankLibRanker(String modelPath) {
+            this.ranker = new RankerFactory().loadRankerFromFile(modelPath);
+        }
+
+        @Override
+        public double[] score(LTRFeatureVectorList feats) {
+            double[] scores = new double[feats.size()];
+            for (int i = 0; i < scores.length; ++i) {
+                scores[i] = this.ranker.eval(new FeatureVector(getFeatureVector(feats, i)));
+            }
+            return scores;
+        }
+    }
+
+    /**
+     * A RankLib data point over a dense feature vector, without parsing
+     * a feature file line.
+     */
+    private static final class FeatureVector extends DataPoint {
+        private FeatureVector(float[] fVals) {
+            this.fVals = fVals;
+            this.knownFeatures = fVals.length - 1;
+        }
+
+        @Override
+        public float getFeatureValue(int fid) {
+            return (fid > 0 && fid < this.fVals.length) ? this.fVals[fid] : 0;
+        }
+
+        @Override
+        public void setFeatureValue(int fid, float fval) {
+            this.fVals[fid] = fval;
+        }
+
+        @Override
+        public void setFeatureVector(float[] dfVals) {
+            this.fVals = dfVals;
+        }
+
+        @Override
+        public float[] getFeatureVector() {
+            return this.fVals;
+        }
+    }
+
+    /**
+     * A linear SVMrank model, i.e., a weight per feature and a
+     * threshold.
+     */
+    private static final class SVMRankRanker extends LTRRanker {
+        private double[] weights = new double[0];
+        private double threshold = 0;
+
+        private SVMRankRanker(String modelPath) throws IOException {
+            try (BufferedReader reader = new BufferedReader(new FileReader(modelPath))) {
+                List<String> svs = new ArrayList<>();
+                boolean inSVs = false;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (inSVs) {
+                        svs.add(line);
+                    } else if (line.endsWith("# kernel type")) {
+                        if (Integer.parseInt(line.split("\\s+")[0]) != 0) {
+                            throw new IOException("Only linear SVMrank models can be loaded: " + modelPath);
+                        }
+                    } else if (line.contains("# threshold b")) {
+                        this.threshold = Double.parseDouble(line.split("\\s+")[0]);
+                        inSVs = true;
+                    }
+                }
+                if (!inSVs) throw new IOException("Not an SVMrank model file: " + modelPath);
+
+                //  Each support vector is "alpha*y fid:val ... #"; the
+                //  weights are their sum.
+
+                for (String sv : svs) {
+                    int comment = sv.indexOf('#');
+                    if (comment >= 0) sv = sv.substring(0, comment);
+                    String[] tokens = sv.trim().split("\\s+");
+                    if (tokens[0].isEmpty()) continue;
+
+                    double alpha = Double.parseDouble(tokens[0]);
+                    for (int i = 1; i < tokens.length; ++i) {
+                        int colon = tokens[i].indexOf(':');
+                        int fid = Integer.parseInt(tokens[i].substring(0, colon));
+                        float val = (float) Double.parseDouble(tokens[i].substring(colon + 1));
+                        if (fid >= this.weights.length) this.weights = Arrays.copyOf(this.weights, fid + 1);
+                        this.weights[fid] += val * alpha;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public double[] score(LTRFeatureVectorList feats) {
+            double[] scores = new double[feats.size()];
+            for (int i = 0; i < scores.length; ++i) {
+                float[] vec = getFeatureVector(feats, i);
+                double sum = 0;
+                for (int fid = 1; fid < vec.length && fid < this.weights.length; ++fid) {
+                    sum += this.weights[fid] * (double) vec[fid];
+                }
+                scores[i] = Double.parseDouble(String.format(Locale.ROOT, "%.8g", sum - this.threshold));
+            }
+            return scores;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * A cache of objects read from the index, kept in least-recently-used
+ * order up to a budget of bytes.  An object that is larger than the
+ * budget is not cached.  Cached objects are shared by every caller, so
+ * they must not be modified.  The cache is thread-safe.
+ * <p>
+ * Subclasses (e.g., InvListCache) choose the keys and read the objects
+ * on a miss.
+ * </p>
+ *
+ * @param <V> The type of the cached objects.
+ */
+public class LruCache<V> {
+
+    //  --------------- Constants and variables -----------------------
+
+    /**
+     * Reads an object from the index on a miss.
+     */
+    @FunctionalInterface
+    protected interface Loader<V> {
+        V load() throws IOException;
+    }
+
+    private final long maxBytes;
+    private final ToLongFunction<V> ramBytesUsed;
+    private final String noun;
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * key -> object, in least-recently-used order.
+     */
+    private final LinkedHashMap<String, V> values = new LinkedHashMap<>(16, 0.75f, true);
+
+    //  --------------- Methods ---------------------------------------
+
+    /**
+     * @param maxBytes     The memory budget, in bytes.
+     * @param ramBytesUsed The size of an object, in bytes.
+     * @param noun         What the objects are called in toString, e.g., "lists".
+     */
+    protected LruCache(long maxBytes, ToLongFunction<V> ramBytesUsed, String noun) {
+        this.maxBytes = maxBytes;
+        this.ramBytesUsed = ramBytesUsed;
+        this.noun = noun;
+    }
+
+    /**
+     * @return The memory budget, in bytes.
+     */
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    /**
+     * Get an object, reading it if it isn't cached.
+     *
+     * @param key    The object's key.
+     * @param loader Reads the object if it isn't cached.
+     * @return The object.  It must not be modified.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    protected V get(String key, Loader<V> loader) throws IOException {
+        synchronized (this) {
+            V value = this.values.get(key);
+            if (value != null) {
+                this.hits++;
+                return value;
+            }
+            this.misses++;
+        }
+
+        //  Concurrent misses on the same key may both read it; the
+        //  objects are identical, so either may be kept.
+
+        V value = loader.load();
+        long valueBytes = this.ramBytesUsed.applyAsLong(value);
+        if (valueBytes > this.maxBytes) return value;
+
+        synchronized (this) {
+            V old = this.values.put(key, value);
+            if (old != null) this.bytes -= this.ramBytesUsed.applyAsLong(old);
+            this.bytes += valueBytes;
+
+            Iterator<V> lru = this.values.values().iterator();
+            while (this.bytes > this.maxBytes) {
+                this.bytes -= this.ramBytesUsed.applyAsLong(lru.next());
+                lru.remove();
+                this.evictions++;
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * @return The number of lookups that were found in the cache.
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return The number of lookups that were read from the index.
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * @return The number of objects that were evicted to stay within
+     * the budget.
+     */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * @return The fraction of lookups that were found in the cache.
+     */
+    public synchronized double getHitRate() {
+        long lookups = this.hits + this.misses;
+        return (lookups == 0) ? 0 : (double) this.hits / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d %s, %d KB, %d hits, %d misses (%.1f%% hits), %d evictions",
+                this.values.size(), this.noun, this.bytes / 1024, this.hits, this.misses,
+                100 * getHitRate(), this.evictions);
+    }
+}
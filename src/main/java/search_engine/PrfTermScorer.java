@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scores the candidate expansion terms of one query for Indri PRF, one
+ * feedback document at a time.
+ * <p>
+ * Each stem gets a dense id the first time it is seen.  Its ctf, idf,
+ * and mu * ctf / L are computed once, when it is first seen, and its
+ * score is kept in a primitive array.  The stems that are missing from
+ * a document are found by stamping the ids of the document's stems,
+ * instead of looking every candidate up in the document's TermVector
+ * and reading its ctf from the index again.
+ * </p><p>
+ * The scores are the same as the HashMap implementation of
+ * SearchEngine.initializePrf computed, with the same operations in the
+ * same order, so the expansion queries are identical.  A scorer is used
+ * by one thread.
+ * </p>
+ */
+public class PrfTermScorer {
+
+    //  --------------- Constants and variables -----------------------
+
+    private final double mu;
+    private final long L;
+    private final double logL;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private int numTerms = 0;
+
+    /**
+     * Per term id.
+     */
+    private String[] stems = new String[256];
+    private double[] ctf = new double[256];
+    private double[] idf = new double[256];
+    private double[] muPMLE = new double[256];   // mu * ctf / L
+    private double[] scores = new double[256];
+    private int[] lastSeen = new int[256];        // the last document that contains the term
+
+    private int numDocs = 0;
+    private double prevDocIncre = 0.0; // https://boston.lti.cs.cmu.edu/classes/11-642/HW/HW3/FAQ.html
+
+    //  --------------- Methods ---------------------------------------
+
+    /**
+     * @param mu The Dirichlet smoothing parameter.
+     * @param L  The total length of the expansion field.
+     */
+    public PrfTermScorer(double mu, long L) {
+        this.mu = mu;
+        this.L = L;
+        this.logL = Math.log(L);
+    }
+
+    /**
+     * Add the terms of a feedback document to the scores.
+     *
+     * @param tv       The term vector of the document's expansion field.
+     * @param docScore The document's score in the initial ranking.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public void addDocument(TermVector tv, double docScore) throws IOException {
+        int doc = ++this.numDocs;
+        int numPrevTerms = this.numTerms;
+        double docLen = tv.positionsLength();
+
+        // terms in this document
+        for (int i = 1; i < tv.stemsLength(); ++i) {
+            assert docLen > 0;
+
+            String stem = tv.stemString(i);
+            Integer id = this.ids.get(stem);
+            if (id == null) { // first encounter of this term
+                int t = newTerm(stem, tv.totalStemFreq(i));
+                double p_td = (
+                        tv.stemFreq(i) + this.muPMLE[t]
+                ) / (docLen + this.mu);
+                double score = p_td * this.idf[t] * docScore;
+                this.scores[t] = this.prevDocIncre * this.ctf[t] / this.L * this.idf[t] + score;
+                this.lastSeen[t] = doc;
+            } else {
+                int t = id;
+                double p_td = (
+                        tv.stemFreq(i) + this.muPMLE[t]
+                ) / (docLen + this.mu);
+                this.scores[t] += p_td * this.idf[t] * docScore;
+                this.lastSeen[t] = doc;
+            }
+        }
+
+        // terms that are missing in this document but present in other docs
+        for (int t = 0; t < numPrevTerms; ++t) {
+            if (this.lastSeen[t] == doc) continue;
+
+            double p_td = (
+                    0.0 + this.muPMLE[t]
+            ) / (docLen + this.mu);
+            if (Double.isNaN(p_td)) p_td = 0.0; // essentially skip this doc when docLen and mu are both 0
+            this.scores[t] += p_td * this.idf[t] * docScore;
+        }
+
+        if (docLen + this.mu != 0) // essentially skip this doc when docLen and mu are both 0
+            this.prevDocIncre += this.mu / (docLen + this.mu) * docScore;
+    }
+
+    /**
+     * @return The number of feedback documents that were added.
+     */
+    public int numDocs() {
+        return this.numDocs;
+    }
+
+    /**
+     * @return The terms and their scores, sorted by score descendingly,
+     * and by term if the scores are the same.
+     */
+    public List<Map.Entry<String, Double>> getTermScores() {
+        Integer[] order = new Integer[this.numTerms];
+        for (int t = 0; t < this.numTerms; ++t) order[t] = t;
+        Arrays.sort(order, (a, b) -> {
+            int c = Double.compare(this.scores[b], this.scores[a]);
+            return (c != 0) ? c : this.stems[a].compareTo(this.stems[b]);
+        });
+
+        List<Map.Entry<String, Double>> sorted = new ArrayList<>(this.numTerms);
+        for (int t : order) {
+            sorted.add(new AbstractMap.SimpleImmutableEntry<>(this.stems[t], this.scores[t]));
+        }
+        return sorted;
+    }
+
+    /**
+     * Give a stem the next id.
+     */
+    private int newTerm(String stem, long ctf) {
+        int t = this.numTerms++;
+        if (t == this.stems.length) {
+            int n = 2 * t;
+            this.stems = Arrays.copyOf(this.stems, n);
+            this.ctf = Arrays.copyOf(this.ctf, n);
+            this.idf = Arrays.copyOf(this.idf, n);
+            this.muPMLE = Arrays.copyOf(this.muPMLE, n);
+            this.scores = Arrays.copyOf(this.scores, n);
+            this.lastSeen = Arrays.copyOf(this.lastSeen, n);
+        }
+
+        this.ids.put(stem, t);
+        this.stems[t] = stem;
+        this.ctf[t] = ctf;
+        this.idf[t] = this.logL - Math.log(this.ctf[t]);
+        this.muPMLE[t] = this.mu * this.ctf[t] / this.L;
+        return t;
+    }
+}
@@ -60,7 +60,9 @@ import java.util.ArrayList;
  *  possible to produce them in a document-at-a-time mode because
  *  the df and ctf statistics are not known until the inverted list
  *  is fully constructed.  QryIop operators provide a document-at-a-time
- *  interface to the inverted lists via docIterators.
+ *  interface to the inverted lists via docIterators.  The TERM operator
+ *  is the exception:  its df and ctf are index statistics, so it can
+ *  optionally stream its postings from Lucene (see InvListStream).
  *  </p><p>
  *  The data structure that stores query arguments (args) is accessible
  *  by subclasses.  If it is accessed via a standard Java iterator, the
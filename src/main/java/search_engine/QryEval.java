@@ -33,16 +33,31 @@ public class QryEval {
         if (args.length < 1) {
             throw new IllegalArgumentException(USAGE);
         }
-        Map<String, String> parameters = readParameterFile(args[0]);
+        Map<String, String> parameters = readParameterFile(
+                args[0], "indexPath", "queryFilePath", "trecEvalOutputPath", "retrievalAlgorithm");
 
         // Process queries
         SearchEngine se = new SearchEngine(parameters);
-        Map<String, ScoreList> res = se.run();
+        Map<String, ScoreList> res;
+        try {
+            res = se.run();
+        } finally {
+            se.close();
+        }
 
         // Write results to file
         writeResults(res, parameters.get("trecEvalOutputPath"), Integer.parseInt(parameters.get("trecEvalOutputLength")));
 
         // Clean up
+        if (se.getResultCache() != null) {
+            System.out.println("Query result cache:  " + se.getResultCache());
+        }
+        if (se.getModel().getInvListCache() != null) {
+            System.out.println("Inverted list cache:  " + se.getModel().getInvListCache());
+        }
+        if (se.getTermVectorCache() != null) {
+            System.out.println("Term vector cache:  " + se.getTermVectorCache());
+        }
         timer.stop();
         System.out.println("Total running time:  " + timer);
     }
@@ -68,35 +83,47 @@ public class QryEval {
         BufferedWriter writer = new BufferedWriter(fileWriter);
 
         for (Map.Entry<String, ScoreList> e : result.entrySet()) {
-            String qid = e.getKey();
-            ScoreList r = e.getValue();
-
-            if (r.size() < 1) { // no document retrieved
-                writer.write(qid + " Q0 dummy 1 0 reference\n");
-            } else {
-                for (int i = 0; i < Math.min(r.size(), maxNumRes); i++) {
-                    int rank = i + 1;
-                    writer.write(
-                            qid + " Q0 " + Idx.getExternalDocid(r.getDocid(i))
-                                    + " " + rank + " " + String.format("%.12f", r.getDocidScore(i)) + " reference\n"
-                    );
-                }
-            }
+            writeResults(e.getKey(), e.getValue(), maxNumRes, writer);
         }
 
         writer.close();
         fileWriter.close();
     }
 
+    /**
+     * Write the results of one query in trec_eval format.
+     *
+     * @param qid       The query id.
+     * @param r         The query's results.
+     * @param maxNumRes Maximum number of lines written
+     * @param writer    Where to write the results.
+     * @throws IOException Error accessing the Lucene index, or writing.
+     */
+    public static void writeResults(String qid, ScoreList r, int maxNumRes, Writer writer) throws IOException {
+        if (r.size() < 1) { // no document retrieved
+            writer.write(qid + " Q0 dummy 1 0 reference\n");
+        } else {
+            for (int i = 0; i < Math.min(r.size(), maxNumRes); i++) {
+                int rank = i + 1;
+                writer.write(
+                        qid + " Q0 " + r.getExternalDocid(i)
+                                + " " + rank + " " + String.format("%.12f", r.getDocidScore(i)) + " reference\n"
+                );
+            }
+        }
+    }
+
     /**
      * Read the specified parameter file, and confirm that the required
      * parameters are present.  The parameters are returned in a
      * HashMap.  The caller (or its minions) are responsible for processing
      * them.
      *
+     * @param parameterFileName The parameter file.
+     * @param requiredKeys      The parameters that must be present.
      * @return The parameters, in <key, value> format.
      */
-    private static Map<String, String> readParameterFile(String parameterFileName) throws IOException {
+    static Map<String, String> readParameterFile(String parameterFileName, String... requiredKeys) throws IOException {
         Map<String, String> parameters = new HashMap<String, String>();
         File parameterFile = new File(parameterFileName);
 
@@ -119,8 +146,10 @@ public class QryEval {
         //  Confirm that some of the essential parameters are present.
         //  This list is not complete.  It is just intended to catch silly
         //  errors.
-        if (!(parameters.containsKey("indexPath") && parameters.containsKey("queryFilePath") && parameters.containsKey("trecEvalOutputPath") && parameters.containsKey("retrievalAlgorithm"))) {
-            throw new IllegalArgumentException("Required parameters were missing from the parameter file.");
+        for (String key : requiredKeys) {
+            if (!parameters.containsKey(key)) {
+                throw new IllegalArgumentException("Required parameters were missing from the parameter file.");
+            }
         }
 
         return parameters;
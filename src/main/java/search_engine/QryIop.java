@@ -4,7 +4,6 @@
 package search_engine;
 
 import java.io.IOException;
-import java.util.Vector;
 
 /**
  * All query operators that return inverted lists are subclasses of
@@ -35,7 +34,9 @@ public abstract class QryIop extends Qry {
      *
      *  Iteration in QryIop and QrySop is very different.  In QryIop,
      *  docIterator and locIterator iterate over the cached inverted
-     *  list, NOT recursively over the query arguments.
+     *  list, NOT recursively over the query arguments.  The docIterator
+     *  uses galloping search (InvList.findDocid), so skipping far ahead
+     *  in a long list is cheap.
      */
 
     /**
@@ -55,6 +56,22 @@ public abstract class QryIop extends Qry {
      */
     protected InvList invertedList = null;
 
+    /**
+     * Collection statistics of the whole index that replace those of
+     * the inverted list, or -1.  They are set when the query is
+     * evaluated on part of the index (see QryIopTerm.setDocidRange), so
+     * that documents are scored with the statistics of the whole index.
+     */
+    private int indexDf = -1;
+    private int indexCtf = -1;
+
+    /**
+     * If not null, this operator and identical operators elsewhere in
+     * the query tree share one inverted list.  The first of them to be
+     * initialized evaluates it; the others use it.
+     */
+    private SharedInvList sharedInvList = null;
+
     /**
      * The index of the document that the docIterator points to now.
      */
@@ -65,6 +82,13 @@ public abstract class QryIop extends Qry {
      */
     private int locIteratorIndex = QryIop.INVALID_ITERATOR_INDEX;
 
+    /**
+     * An inverted list shared by identical query operators.
+     */
+    private static class SharedInvList {
+        private InvList invertedList = null;
+    }
+
     /**
      * Advance the query operator's internal iterator beyond the
      * specified document.
@@ -73,9 +97,10 @@ public abstract class QryIop extends Qry {
      */
     public void docIteratorAdvancePast(int docid) {
 
-        while ((this.docIteratorIndex < this.invertedList.df) &&
-                (this.invertedList.getDocid(this.docIteratorIndex) <= docid)) {
-            this.docIteratorIndex++;
+        if (docid == Integer.MAX_VALUE) {
+            this.docIteratorIndex = this.invertedList.df;
+        } else {
+            this.docIteratorIndex = this.invertedList.findDocid(this.docIteratorIndex, docid + 1);
         }
 
         this.locIteratorIndex = 0;
@@ -89,11 +114,7 @@ public abstract class QryIop extends Qry {
      */
     public void docIteratorAdvanceTo(int docid) {
 
-        while ((this.docIteratorIndex < this.invertedList.df) &&
-                (this.invertedList.getDocid(this.docIteratorIndex) < docid)) {
-            this.docIteratorIndex++;
-        }
-
+        this.docIteratorIndex = this.invertedList.findDocid(this.docIteratorIndex, docid);
         this.locIteratorIndex = 0;
     }
 
@@ -102,7 +123,7 @@ public abstract class QryIop extends Qry {
      * any possible document.
      */
     public void docIteratorFinish() {
-        this.docIteratorIndex = this.invertedList.postings.size();
+        this.docIteratorIndex = this.invertedList.df;
     }
 
     /**
@@ -118,13 +139,14 @@ public abstract class QryIop extends Qry {
     }
 
     /**
-     * Return the postings for the document that the docIterator points to
-     * now, or throw an error if the docIterator doesn't point at a document.
+     * Return the term frequency of the document that the docIterator
+     * points to now, or throw an error if the docIterator doesn't point
+     * at a document.
      *
-     * @return A document posting.
+     * @return The term frequency (tf) of the current document.
      */
-    public InvList.DocPosting docIteratorGetMatchPosting() {
-        return this.invertedList.postings.get(docIteratorIndex);
+    public int docIteratorGetMatchTf() {
+        return this.invertedList.getTf(this.docIteratorIndex);
     }
 
     /**
@@ -145,7 +167,7 @@ public abstract class QryIop extends Qry {
      * @return The collection term frequency (ctf).
      */
     public int getCtf() {
-        return this.invertedList.ctf;
+        return (this.indexCtf >= 0) ? this.indexCtf : this.invertedList.ctf;
     }
 
     /**
@@ -156,7 +178,50 @@ public abstract class QryIop extends Qry {
      * @return The document frequency (df).
      */
     public int getDf() {
-        return this.invertedList.df;
+        return (this.indexDf >= 0) ? this.indexDf : this.invertedList.df;
+    }
+
+    /**
+     * Replace the df and ctf of the operator's inverted list with those
+     * of the whole index.  This is used when the inverted list only
+     * covers part of the index.
+     *
+     * @param df  The document frequency in the whole index.
+     * @param ctf The collection term frequency in the whole index.
+     */
+    public void setIndexStatistics(int df, int ctf) {
+        this.indexDf = df;
+        this.indexCtf = ctf;
+    }
+
+    /**
+     * Share the inverted list of an identical query operator, so that
+     * only one of them evaluates it.  Each operator still has its own
+     * iterators.  This must be called before either operator is
+     * initialized.
+     *
+     * @param other An operator with the same arguments.
+     */
+    public void shareInvList(QryIop other) {
+        if (other.sharedInvList == null) {
+            other.sharedInvList = new SharedInvList();
+        }
+        this.sharedInvList = other.sharedInvList;
+    }
+
+    /**
+     * Get the largest term frequency in the operator's inverted list.
+     * It is an error to call this method before the object's initialize
+     * method is called.
+     *
+     * @return The maximum term frequency, or 0 if the list is empty.
+     */
+    public int getMaxTf() {
+        int maxTf = 0;
+        for (int i = 0; i < this.invertedList.df; i++) {
+            maxTf = Math.max(maxTf, this.invertedList.getTf(i));
+        }
+        return maxTf;
     }
 
     /**
@@ -185,15 +250,27 @@ public abstract class QryIop extends Qry {
      */
     public void initialize(RetrievalModel r) throws IOException {
 
-        //  Initialize the query arguments (if any).
+        if ((this.sharedInvList != null) && (this.sharedInvList.invertedList != null)) {
 
-        for (Qry q_i : this.args) {
-            (q_i).initialize(r);
-        }
+            //  An identical operator already evaluated the list.
+
+            this.invertedList = this.sharedInvList.invertedList;
+        } else {
 
-        //  Evaluate the operator.
+            //  Initialize the query arguments (if any).
 
-        this.evaluate();
+            for (Qry q_i : this.args) {
+                (q_i).initialize(r);
+            }
+
+            //  Evaluate the operator.
+
+            this.evaluate();
+
+            if (this.sharedInvList != null) {
+                this.sharedInvList.invertedList = this.invertedList;
+            }
+        }
 
         //  Initialize the internal iterators.
 
@@ -216,10 +293,10 @@ public abstract class QryIop extends Qry {
      * @param loc The location to advance beyond.
      */
     public void locIteratorAdvancePast(int loc) {
-        int tf = this.invertedList.postings.get(this.docIteratorIndex).tf;
-        Vector<Integer> positions = this.invertedList.postings.get(this.docIteratorIndex).positions;
+        int tf = this.invertedList.getTf(this.docIteratorIndex);
 
-        while ((this.locIteratorIndex < tf) && (positions.get(this.locIteratorIndex) <= loc)) {
+        while ((this.locIteratorIndex < tf) &&
+                (this.invertedList.getPosition(this.docIteratorIndex, this.locIteratorIndex) <= loc)) {
             locIteratorIndex++;
         }
     }
@@ -229,7 +306,7 @@ public abstract class QryIop extends Qry {
      * any possible location.
      */
     public void locIteratorFinish() {
-        this.locIteratorIndex = this.invertedList.postings.get(this.docIteratorIndex).tf;
+        this.locIteratorIndex = this.invertedList.getTf(this.docIteratorIndex);
     }
 
     /**
@@ -241,8 +318,7 @@ public abstract class QryIop extends Qry {
      * @return The internal id of the current document.
      */
     public int locIteratorGetMatch() {
-        Vector<Integer> locations = this.docIteratorGetMatchPosting().positions;
-        return locations.get(this.locIteratorIndex);
+        return this.invertedList.getPosition(this.docIteratorIndex, this.locIteratorIndex);
     }
 
     /**
@@ -1,9 +1,7 @@
 package search_engine;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * NEAR/n: return a document if all of the query arguments occur in the document, <b>in order</b>, with no more than
@@ -30,13 +28,15 @@ public class QryIopNear extends QryIop {
         this.invertedList = new InvList(this.getField());
         if (args.size() == 0) return;
 
+        int[] positions = new int[16]; // reused across documents
+
         while (this.docIteratorHasMatchAll(null)) { // iterate through all documents that contains all query args
             // DON'T use this.docIteratorGetMatch() because it uses the empty inverted list we are filling in right now
             int docid = args.get(0).docIteratorGetMatch();
             if (docid == Qry.INVALID_DOCID) break;
 
             // Find occurrences of the NEAR/n query
-            List<Integer> positions = new ArrayList<>();
+            int tf = 0;
             while (true) {
                 // make sure positions of args are minimum and monotonically increasing
                 boolean done = false;
@@ -75,7 +75,8 @@ public class QryIopNear extends QryIop {
 
                 // add to inverted list if near
                 if (near) {
-                    positions.add(((QryIop) this.args.get(this.args.size() - 1)).locIteratorGetMatch());
+                    if (tf == positions.length) positions = Arrays.copyOf(positions, 2 * tf);
+                    positions[tf++] = ((QryIop) this.args.get(this.args.size() - 1)).locIteratorGetMatch();
 
                     // consume all indices
                     for (Qry arg : this.args) {
@@ -88,9 +89,9 @@ public class QryIopNear extends QryIop {
             }
 
             // sort and add to inverted list
-            if (positions.size() > 0) {
-                Collections.sort(positions);
-                this.invertedList.appendPosting(docid, positions);
+            if (tf > 0) {
+                Arrays.sort(positions, 0, tf);
+                this.invertedList.appendPosting(docid, positions, tf);
             }
 
             // advance doc iterators
@@ -4,10 +4,7 @@
 package search_engine;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Vector;
+import java.util.Arrays;
 
 /**
  * The SYN operator for all retrieval models.
@@ -32,7 +29,10 @@ public class QryIopSyn extends QryIop {
         }
 
         //  Each pass of the loop adds 1 document to result inverted list
-        //  until all of the argument inverted lists are depleted.
+        //  until all of the argument inverted lists are depleted.  The
+        //  positions buffer is reused across documents.
+
+        int[] positions = new int[16];
 
         while (true) {
 
@@ -58,18 +58,27 @@ public class QryIopSyn extends QryIop {
             //  Note:  This implementation assumes that a location will not appear
             //  in two or more arguments.  #SYN (apple apple) would break it.
 
-            List<Integer> positions = new ArrayList<Integer>();
+            int tf = 0;
 
             for (Qry q_i : this.args) {
                 if (q_i.docIteratorHasMatch(null) && (q_i.docIteratorGetMatch() == minDocid)) {
-                    Vector<Integer> locations_i = ((QryIop) q_i).docIteratorGetMatchPosting().positions;
-                    positions.addAll(locations_i);
+                    QryIop q = (QryIop) q_i;
+                    int tf_i = q.docIteratorGetMatchTf();
+
+                    if (tf + tf_i > positions.length) {
+                        positions = Arrays.copyOf(positions, Math.max(2 * positions.length, tf + tf_i));
+                    }
+
+                    for (; q.locIteratorHasMatch(); q.locIteratorAdvance()) {
+                        positions[tf++] = q.locIteratorGetMatch();
+                    }
+
                     q_i.docIteratorAdvancePast(minDocid);
                 }
             }
 
-            Collections.sort(positions);
-            this.invertedList.appendPosting(minDocid, positions);
+            Arrays.sort(positions, 0, tf);
+            this.invertedList.appendPosting(minDocid, positions, tf);
         }
     }
 
@@ -16,6 +16,31 @@ public class QryIopTerm extends QryIop {
 
     private String term;
 
+    /**
+     * If true, the operator reads its postings from Lucene as they are
+     * iterated (see InvListStream) instead of materializing an InvList
+     * when it is initialized.  If invListCache isn't null, materialized
+     * inverted lists are read through it, so that they are shared
+     * across queries.  Both are set from the retrieval model.
+     */
+    private boolean streaming = false;
+    private InvListCache invListCache = null;
+
+    /**
+     * Whether a parent operator may ask for locations.  Only used when
+     * streaming; a term that is scored directly needs only tfs.
+     */
+    private boolean positionsRequired = true;
+
+    /**
+     * The docids that the operator covers are in [minDocid, maxDocid).
+     */
+    private int minDocid = 0;
+    private int maxDocid = Integer.MAX_VALUE;
+
+    private InvListStream stream = null;
+    private int streamLocIndex = 0;
+
     /**
      * The term is assumed to match the body field.
      *
@@ -37,6 +62,22 @@ public class QryIopTerm extends QryIop {
         this.field = field;
     }
 
+    /**
+     * Initialize the query operator, reading its inverted list the way
+     * the retrieval model says (see RetrievalModel.isStreaming).
+     *
+     * @param r A retrieval model, or null for the defaults.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    @Override
+    public void initialize(RetrievalModel r) throws IOException {
+        if (r != null) {
+            this.streaming = r.isStreaming();
+            this.invListCache = r.getInvListCache();
+        }
+        super.initialize(r);
+    }
+
     /**
      * Evaluate the query operator; the result is an internal inverted
      * list that may be accessed via the internal iterators.
@@ -44,7 +85,164 @@ public class QryIopTerm extends QryIop {
      * @throws IOException Error accessing the Lucene index.
      */
     protected void evaluate() throws IOException {
-        this.invertedList = new InvList(this.term, this.field);
+        if (this.streaming) {
+            this.stream = new InvListStream(this.term, this.field, this.positionsRequired, this.minDocid, this.maxDocid);
+            this.streamLocIndex = 0;
+        } else {
+            if (this.invListCache != null) {
+                this.invertedList = this.invListCache.get(this.term, this.field, this.minDocid, this.maxDocid);
+            } else {
+                this.invertedList = new InvList(this.term, this.field, this.minDocid, this.maxDocid);
+            }
+
+            //  A part of the inverted list is scored with the statistics
+            //  of the whole list.
+
+            if ((this.minDocid > 0) || (this.maxDocid < Idx.INDEXREADER.maxDoc())) {
+                this.setIndexStatistics(
+                        (int) Idx.getDocFreq(this.field, this.term),
+                        (int) Idx.getTotalTermFreq(this.field, this.term));
+            }
+        }
+    }
+
+    /**
+     * Get the term string.
+     *
+     * @return The processed (stemmed, lower-cased, etc) term string.
+     */
+    public String getTerm() {
+        return this.term;
+    }
+
+    /**
+     * Restrict the operator to the documents in a docid range, so that
+     * a query can be evaluated on part of the index.  getDf and getCtf
+     * still describe the whole index.  This must be called before the
+     * operator is initialized.
+     *
+     * @param minDocid The smallest docid to include.
+     * @param maxDocid The docid after the largest docid to include.
+     */
+    public void setDocidRange(int minDocid, int maxDocid) {
+        this.minDocid = minDocid;
+        this.maxDocid = maxDocid;
+    }
+
+    /**
+     * Tell the operator whether its parent will ask for locations.
+     * This must be called before the operator is initialized.
+     *
+     * @param positionsRequired False if only docids and tfs are used.
+     */
+    public void setPositionsRequired(boolean positionsRequired) {
+        this.positionsRequired = positionsRequired;
+    }
+
+    //  When streaming, the docIterator and locIterator read the
+    //  InvListStream instead of the (absent) materialized InvList.
+
+    @Override
+    public void docIteratorAdvancePast(int docid) {
+        if (this.stream == null) {
+            super.docIteratorAdvancePast(docid);
+        } else {
+            this.stream.advancePast(docid);
+            this.streamLocIndex = 0;
+        }
+    }
+
+    @Override
+    public void docIteratorAdvanceTo(int docid) {
+        if (this.stream == null) {
+            super.docIteratorAdvanceTo(docid);
+        } else {
+            this.stream.advanceTo(docid);
+            this.streamLocIndex = 0;
+        }
+    }
+
+    @Override
+    public void docIteratorFinish() {
+        if (this.stream == null) {
+            super.docIteratorFinish();
+        } else {
+            this.stream.finish();
+        }
+    }
+
+    @Override
+    public int docIteratorGetMatch() {
+        return (this.stream == null) ? super.docIteratorGetMatch() : this.stream.docid();
+    }
+
+    @Override
+    public int docIteratorGetMatchTf() {
+        return (this.stream == null) ? super.docIteratorGetMatchTf() : this.stream.tf();
+    }
+
+    @Override
+    public boolean docIteratorHasMatch(RetrievalModel r) {
+        return (this.stream == null) ? super.docIteratorHasMatch(r) : this.stream.hasDoc();
+    }
+
+    @Override
+    public int getCtf() {
+        return (this.stream == null) ? super.getCtf() : this.stream.ctf;
+    }
+
+    @Override
+    public int getDf() {
+        return (this.stream == null) ? super.getDf() : this.stream.df;
+    }
+
+    /**
+     * A stream can't know its largest tf without reading every
+     * posting, so it reports an unbounded one.
+     */
+    @Override
+    public int getMaxTf() {
+        return (this.stream == null) ? super.getMaxTf() : ((this.stream.df > 0) ? Integer.MAX_VALUE : 0);
+    }
+
+    @Override
+    public void locIteratorAdvance() {
+        if (this.stream == null) {
+            super.locIteratorAdvance();
+        } else {
+            this.streamLocIndex++;
+        }
+    }
+
+    @Override
+    public void locIteratorAdvancePast(int loc) {
+        if (this.stream == null) {
+            super.locIteratorAdvancePast(loc);
+        } else {
+            int tf = this.stream.tf();
+            while ((this.streamLocIndex < tf) && (this.stream.getPosition(this.streamLocIndex) <= loc)) {
+                this.streamLocIndex++;
+            }
+        }
+    }
+
+    @Override
+    public void locIteratorFinish() {
+        if (this.stream == null) {
+            super.locIteratorFinish();
+        } else {
+            this.streamLocIndex = this.stream.tf();
+        }
+    }
+
+    @Override
+    public int locIteratorGetMatch() {
+        return (this.stream == null) ? super.locIteratorGetMatch() : this.stream.getPosition(this.streamLocIndex);
+    }
+
+    @Override
+    public boolean locIteratorHasMatch() {
+        return (this.stream == null) ? super.locIteratorHasMatch() : (this.streamLocIndex < this.stream.tf());
     }
 
     /**
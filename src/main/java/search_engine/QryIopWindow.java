@@ -1,9 +1,7 @@
 package search_engine;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * WINDOW/n: similar to NEAR/n, but the order of words is arbitrary, and n refers to the max distance between any
@@ -26,13 +24,15 @@ public class QryIopWindow extends QryIop {
         this.invertedList = new InvList(this.getField());
         if (args.size() == 0) return;
 
+        int[] positions = new int[16]; // reused across documents
+
         while (this.docIteratorHasMatchAll(null)) { // iterate through all documents that contains all query args
             // DON'T use this.docIteratorGetMatch() because it uses the empty inverted list we are filling in right now
             int docid = args.get(0).docIteratorGetMatch();
             if (docid == Qry.INVALID_DOCID) break;
 
             // find occurrences of the query args
-            List<Integer> positions = new ArrayList<>();
+            int tf = 0;
             while (true) {
                 // find the min and the max position among query arg
                 int minPos = Integer.MAX_VALUE;
@@ -65,7 +65,8 @@ public class QryIopWindow extends QryIop {
                 // check distance between the min position and max position
                 // add to inverted list if valid
                 if (maxPos >= minPos && maxPos - minPos < this.maxDistance) {
-                    positions.add(((QryIop) this.args.get(maxArgIdx)).locIteratorGetMatch());
+                    if (tf == positions.length) positions = Arrays.copyOf(positions, 2 * tf);
+                    positions[tf++] = ((QryIop) this.args.get(maxArgIdx)).locIteratorGetMatch();
 
                     // consume all indices
                     for (Qry arg : this.args) {
@@ -78,9 +79,9 @@ public class QryIopWindow extends QryIop {
             }
 
             // sort and add to inverted list
-            if (positions.size() > 0) {
-                Collections.sort(positions);
-                this.invertedList.appendPosting(docid, positions);
+            if (tf > 0) {
+                Arrays.sort(positions, 0, tf);
+                this.invertedList.appendPosting(docid, positions, tf);
             }
 
             // advance doc iterators
@@ -10,7 +10,10 @@ import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * QryParser is an embarrassingly simplistic query parser.  It has
@@ -173,6 +176,41 @@ public class QryParser {
     }
 
 
+    /**
+     * Find inverted list operators (other than TERM) that occur more
+     * than once in a query tree, for example the same #NEAR/1 pair in
+     * several branches of a sequential dependency model query, and make
+     * each set of identical operators share one inverted list (see
+     * QryIop.shareInvList).  The list is evaluated once; each operator
+     * keeps its own iterators.  Operators are identical if their
+     * query strings are, ignoring the case of operator names.
+     *
+     * @param q    A query tree.
+     * @param seen The first operator with each query string.
+     */
+    private static void shareSubexpressions(Qry q, Map<String, QryIop> seen) {
+
+        if (q instanceof QryIopTerm) {
+            return;
+        }
+
+        if (q instanceof QryIop) {
+            QryIop iop = (QryIop) q;
+            QryIop first = seen.putIfAbsent(iop.toString().toLowerCase(Locale.ROOT), iop);
+
+            //  The arguments of a copy are never evaluated.
+
+            if (first != null) {
+                iop.shareInvList(first);
+                return;
+            }
+        }
+
+        for (Qry q_i : q.args) {
+            shareSubexpressions(q_i, seen);
+        }
+    }
+
     /**
      * Parse a query string into a query tree.
      *
@@ -185,6 +223,9 @@ public class QryParser {
     public static Qry getQuery(String queryString) throws IOException, IllegalArgumentException {
         Qry q = parseString(queryString);        // An exact parse
         q = optimizeQuery(q);            // An optimized parse
+        if (q != null) {
+            shareSubexpressions(q, new HashMap<>());
+        }
         return q;
     }
 
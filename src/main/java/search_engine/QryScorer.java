@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import java.io.IOException;
+
+/**
+ * A scorer computes the scores of one score operator (QrySop) under
+ * one retrieval model.  Each operator chooses its scorer once per
+ * query (QrySop.getScorer), so the retrieval model is tested once
+ * instead of for every document, and each scorer's score method is a
+ * monomorphic call site that the JIT can inline.
+ * <p>
+ * A scorer of an operator with arguments holds the scorers of its
+ * arguments, so a query tree is compiled into a tree of scorers.
+ * QrySop.getScore delegates to the operator's scorer, and
+ * IIndriSop.getDefaultScore to its Indri scorer (QryScorerIndri).
+ * </p>
+ */
+public abstract class QryScorer {
+
+    /**
+     * Get the score of the document that the operator's
+     * docIteratorHasMatch matched.
+     *
+     * @return The document score.
+     * @throws IOException Error accessing the Lucene index
+     */
+    public abstract double score() throws IOException;
+
+    /**
+     * Compile the arguments of an operator into scorers.
+     *
+     * @param q The operator.
+     * @param r The retrieval model.
+     * @return The scorers, indexed like q.args.
+     */
+    static QryScorer[] compileArgs(Qry q, RetrievalModel r) {
+        QryScorer[] scorers = new QryScorer[q.args.size()];
+        for (int i = 0; i < scorers.length; i++) {
+            scorers[i] = ((QrySop) q.args.get(i)).getScorer(r);
+        }
+        return scorers;
+    }
+
+    /**
+     * Get the arguments of an operator, which must be score operators.
+     *
+     * @param q The operator.
+     * @return The arguments.
+     */
+    static QrySop[] sopArgs(Qry q) {
+        QrySop[] args = new QrySop[q.args.size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = (QrySop) q.args.get(i);
+        }
+        return args;
+    }
+
+    /**
+     * Get a scorer that always returns the same score, e.g., 1 for a
+     * match in the unranked Boolean model.
+     *
+     * @param score The score.
+     * @return The scorer.
+     */
+    static QryScorer constant(double score) {
+        return new Constant(score);
+    }
+
+    /**
+     * Get a scorer for a retrieval model that the operator doesn't
+     * support.  Like the operators did before scorers, it fails when a
+     * document is scored, not when the query is compiled.
+     *
+     * @param r The retrieval model.
+     * @param operatorName The operator's name, for the error message.
+     * @return The scorer.
+     */
+    static QryScorer unsupported(RetrievalModel r, String operatorName) {
+        return new Unsupported(r.getClass().getName() + " doesn't support the " + operatorName + " operator.");
+    }
+
+    private static final class Constant extends QryScorer {
+        private final double score;
+
+        private Constant(double score) {
+            this.score = score;
+        }
+
+        @Override
+        public double score() {
+            return this.score;
+        }
+    }
+
+    private static final class Unsupported extends QryScorer {
+        private final String message;
+
+        private Unsupported(String message) {
+            this.message = message;
+        }
+
+        @Override
+        public double score() {
+            throw new IllegalArgumentException(this.message);
+        }
+    }
+}
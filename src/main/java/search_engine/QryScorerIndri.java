@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import java.io.IOException;
+
+/**
+ * A scorer for the Indri retrieval model.  Indri scorers also compute
+ * the default score (see IIndriSop) of a document that the operator
+ * didn't match, which the operators that combine them (e.g., #AND and
+ * #WAND) need for the arguments that don't match a document.
+ */
+public abstract class QryScorerIndri extends QryScorer {
+
+    /**
+     * Get the default score of a document that the operator didn't
+     * match.
+     *
+     * @param docid Internal Document ID
+     * @return The document score.
+     * @throws IOException Error accessing the Lucene index
+     */
+    public abstract double defaultScore(int docid) throws IOException;
+
+    /**
+     * Compile the arguments of an operator into Indri scorers.
+     *
+     * @param q The operator.
+     * @param r The retrieval model.
+     * @return The scorers, indexed like q.args.
+     * @throws IllegalArgumentException An argument doesn't support the Indri
+     *                                  retrieval model.
+     */
+    static QryScorerIndri[] compileArgs(Qry q, Indri r) {
+        QryScorerIndri[] scorers = new QryScorerIndri[q.args.size()];
+        for (int i = 0; i < scorers.length; i++) {
+            scorers[i] = of((QrySop) q.args.get(i), r);
+        }
+        return scorers;
+    }
+
+    /**
+     * Get the Indri scorer of an operator.
+     *
+     * @param q The operator.
+     * @param r The retrieval model.
+     * @return The scorer.
+     * @throws IllegalArgumentException The operator doesn't support the
+     *                                  Indri retrieval model.
+     */
+    static QryScorerIndri of(QrySop q, Indri r) {
+        QryScorer scorer = q.getScorer(r);
+        if (!(scorer instanceof QryScorerIndri)) {
+            throw new IllegalArgumentException(
+                    r.getClass().getName() + " doesn't support the " + q.getDisplayName() + " operator.");
+        }
+        return (QryScorerIndri) scorer;
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-running query server.  It opens the index and builds the
+ * retrieval model once, then evaluates queries as they arrive, so a
+ * query doesn't pay for JVM startup, opening the index, or initializing
+ * the query parser and model.
+ * <p>
+ * The parameter file is a QryEval parameter file.  queryFilePath and
+ * trecEvalOutputPath are not used.  If it has a server:port parameter,
+ * the server accepts connections on that port of the loopback
+ * interface, and serves each connection on its own thread.  Otherwise
+ * it reads requests from stdin and writes responses to stdout (log
+ * messages go to stderr).
+ * </p><p>
+ * The protocol is line-based UTF-8 text.  Each request is one line,
+ * and each response ends with an empty line.
+ * </p>
+ * <pre>
+ *   qid:query [TAB key=value ...]   Evaluate a query, in query file format.
+ *                                   The response is its ranking in
+ *                                   trec_eval format.  key=value
+ *                                   parameters apply to this query only.
+ *   SET key=value                   Set a parameter for the rest of the
+ *                                   session.  The response is OK.
+ *   RESET                           Forget the session's parameters.
+ *   QUIT                            End the session.
+ * </pre>
+ * <p>
+ * The parameters that may be changed are retrievalAlgorithm, BM25:b,
+ * BM25:k_1, BM25:k_3, Indri:mu, Indri:lambda, and trecEvalOutputLength.
+ * Only queries are evaluated; PRF, LTR reranking, and diversification
+ * are not available, and retrievalAlgorithm may not be LTR.  A request
+ * that is invalid or fails gets an "ERROR message" response, and the
+ * session continues.
+ * </p>
+ */
+public class QryServer implements AutoCloseable {
+
+    //  --------------- Constants and variables -----------------------
+
+    private static final String USAGE = "Usage:  java QryServer paramFile\n\n";
+
+    private final Map<String, String> parameters;
+    private final SearchEngine engine;
+
+    /**
+     * The parameters that select and configure the retrieval model.
+     */
+    private static final Set<String> MODEL_PARAMETERS = Set.of(
+            "retrievalAlgorithm", "BM25:b", "BM25:k_1", "BM25:k_3", "Indri:mu", "Indri:lambda");
+
+    /**
+     * Model parameters that are set once, from the parameter file;
+     * requests can't change them.
+     */
+    private static final Set<String> FIXED_MODEL_PARAMETERS = Set.of(
+            "BM25:pruning", "postings:streaming", "cache:invListMB");
+
+    /**
+     * The number of retrieval models that are kept.
+     */
+    private static final int MAX_MODELS = 64;
+
+    /**
+     * Retrieval models, by their parameters, in least-recently-used
+     * order.  Models are read-only after they are built, so sessions
+     * share them.
+     */
+    private final Map<Map<String, String>, RetrievalModel> models = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Map<String, String>, RetrievalModel> eldest) {
+            return this.size() > MAX_MODELS;
+        }
+    };
+
+    //  --------------- Methods ---------------------------------------
+
+    /**
+     * @param args The only argument is the parameter file name.
+     * @throws Exception Error accessing the Lucene index.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        Map<String, String> parameters = QryEval.readParameterFile(
+                args[0], "indexPath", "retrievalAlgorithm", "trecEvalOutputLength");
+
+        String port = parameters.get("server:port");
+        if (port == null) {
+            PrintStream protocolOut = System.out;
+            System.setOut(System.err);
+
+            try (QryServer server = new QryServer(parameters)) {
+                server.serve(
+                        new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+                        new BufferedWriter(new OutputStreamWriter(protocolOut, StandardCharsets.UTF_8)));
+            }
+        } else {
+            new QryServer(parameters).listen(Integer.parseInt(port));
+        }
+    }
+
+    /**
+     * Open the index and build the default retrieval model.
+     *
+     * @param parameters The parameters of the parameter file.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public QryServer(Map<String, String> parameters) throws IOException {
+        this.parameters = parameters;
+        this.engine = new SearchEngine(parameters);
+        this.getModel(parameters);
+    }
+
+    /**
+     * Stop the search engine's threads.
+     */
+    @Override
+    public void close() {
+        this.engine.close();
+    }
+
+    /**
+     * Accept connections on a port of the loopback interface, and serve
+     * each on its own thread.  This method doesn't return.
+     *
+     * @param port The port.
+     * @throws IOException Error opening the port.
+     */
+    public void listen(int port) throws IOException {
+        ExecutorService sessions = Executors.newCachedThreadPool();
+
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("Listening on port " + serverSocket.getLocalPort());
+
+            while (true) {
+                Socket socket = serverSocket.accept();
+                sessions.submit(() -> {
+                    try (Socket s = socket) {
+                        this.serve(
+                                new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8)),
+                                new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)));
+                    } catch (IOException ex) {
+                        ex.printStackTrace();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Serve one session:  read requests until QUIT or the end of the
+     * input, and write a response to each.
+     *
+     * @param input  Where requests are read from.
+     * @param output Where responses are written to.
+     * @throws IOException Error reading or writing.
+     */
+    public void serve(BufferedReader input, BufferedWriter output) throws IOException {
+        Map<String, String> sessionParameters = new HashMap<>();
+
+        String line;
+        while ((line = input.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty()) continue;
+            if (line.equals("QUIT")) break;
+
+            try {
+                if (line.startsWith("SET ")) {
+                    String[] pair = parseParameter(line.substring(4));
+                    sessionParameters.put(pair[0], pair[1]);
+                    output.write("OK\n");
+                } else if (line.equals("RESET")) {
+                    sessionParameters.clear();
+                    output.write("OK\n");
+                } else {
+                    this.processRequest(line, sessionParameters, output);
+                }
+            } catch (IllegalArgumentException ex) {
+                output.write("ERROR " + String.valueOf(ex.getMessage()).replace('\n', ' ') + "\n");
+            } catch (RuntimeException ex) {
+
+                //  A bug or an unexpected query shouldn't end the session
+                //  (or, with server:port, kill the connection's thread).
+
+                ex.printStackTrace();
+                output.write("ERROR " + ex.toString().replace('\n', ' ') + "\n");
+            }
+
+            output.write("\n");
+            output.flush();
+        }
+    }
+
+    /**
+     * Evaluate a query request and write its ranking.
+     */
+    private void processRequest(String line, Map<String, String> sessionParameters, Writer output)
+            throws IOException {
+        String[] fields = line.split("\t");
+        String[] pair = SearchEngine.parseQueryLine(fields[0]);
+
+        Map<String, String> requestParameters = new HashMap<>(this.parameters);
+        requestParameters.putAll(sessionParameters);
+        for (int i = 1; i < fields.length; i++) {
+            String[] kv = parseParameter(fields[i]);
+            requestParameters.put(kv[0], kv[1]);
+        }
+
+        RetrievalModel model = this.getModel(requestParameters);
+        int k;
+        try {
+            k = Integer.parseInt(requestParameters.get("trecEvalOutputLength"));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid trecEvalOutputLength");
+        }
+
+        System.out.println("Query " + fields[0]);
+        ScoreList results = this.engine.processQuery(pair[1], model, k, System.out);
+        if (results == null) results = new ScoreList();
+
+        QryEval.writeResults(pair[0], results, k, output);
+    }
+
+    /**
+     * Get the retrieval model for a set of parameters, building it if
+     * it hasn't been built yet.
+     */
+    private RetrievalModel getModel(Map<String, String> parameters) throws IOException {
+        Map<String, String> modelParameters = new TreeMap<>();
+        for (Map.Entry<String, String> e : parameters.entrySet()) {
+            if (isModelParameter(e.getKey()) || FIXED_MODEL_PARAMETERS.contains(e.getKey())) {
+                modelParameters.put(e.getKey(), e.getValue());
+            }
+        }
+
+        String retrievalAlgorithm = modelParameters.get("retrievalAlgorithm");
+        if (retrievalAlgorithm == null) {
+            throw new IllegalArgumentException("Missing retrievalAlgorithm");
+        }
+        String[] required;
+        switch (retrievalAlgorithm.toLowerCase()) {
+            case "bm25":
+                required = new String[]{"BM25:b", "BM25:k_1", "BM25:k_3"};
+                break;
+            case "indri":
+                required = new String[]{"Indri:mu", "Indri:lambda"};
+                break;
+            case "ltr":
+                throw new IllegalArgumentException("LTR reranking isn't served");
+            default:
+                required = new String[0];
+        }
+        for (String key : required) {
+            if (!modelParameters.containsKey(key)) {
+                throw new IllegalArgumentException("Missing " + key);
+            }
+        }
+
+        synchronized (this.models) {
+            RetrievalModel model = this.models.get(modelParameters);
+            if (model != null) return model;
+        }
+
+        RetrievalModel model;
+        try {
+            model = SearchEngine.createModel(modelParameters);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid model parameters");
+        }
+        synchronized (this.models) {
+            this.models.putIfAbsent(modelParameters, model);
+        }
+        return model;
+    }
+
+    private static boolean isModelParameter(String key) {
+        return MODEL_PARAMETERS.contains(key);
+    }
+
+    /**
+     * Parse a key=value parameter that a request may change.
+     */
+    private static String[] parseParameter(String s) {
+        String[] pair = s.split("=", 2);
+        if (pair.length != 2) {
+            throw new IllegalArgumentException("Syntax error:  Parameters must be key=value.");
+        }
+
+        pair[0] = pair[0].trim();
+        pair[1] = pair[1].trim();
+        if (!isModelParameter(pair[0]) && !pair[0].equals("trecEvalOutputLength")) {
+            throw new IllegalArgumentException(pair[0] + " can't be changed by a request.");
+        }
+        return pair;
+    }
+}
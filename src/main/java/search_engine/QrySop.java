@@ -16,6 +16,13 @@ import java.io.IOException;
  */
 public abstract class QrySop extends Qry {
 
+    /**
+     * The scorer of the operator, and the retrieval model it was
+     * compiled for.
+     */
+    private QryScorer scorer = null;
+    private RetrievalModel scorerModel = null;
+
     /**
      * Get a score for the document that docIteratorHasMatch matched.
      *
@@ -23,7 +30,42 @@ public abstract class QrySop extends Qry {
      * @return The document score.
      * @throws IOException Error accessing the Lucene index
      */
-    public abstract double getScore(RetrievalModel r) throws IOException;
+    public double getScore(RetrievalModel r) throws IOException {
+        return this.getScorer(r).score();
+    }
+
+    /**
+     * Get the operator's scorer for a retrieval model, compiling it
+     * (and the scorers of the operator's arguments) the first time.
+     * The operator must have been initialized.
+     *
+     * @param r The retrieval model that determines how scores are calculated.
+     * @return The scorer.
+     */
+    public QryScorer getScorer(RetrievalModel r) {
+        if (r != this.scorerModel) {
+            this.scorer = this.createScorer(r);
+            this.scorerModel = r;
+        }
+        return this.scorer;
+    }
+
+    /**
+     * Forget the operator's scorer, e.g., because the statistics that
+     * it was compiled from changed.  Scorers that were already compiled
+     * (e.g., those of the operator's parents) are not affected.
+     */
+    protected void resetScorer() {
+        this.scorerModel = null;
+    }
+
+    /**
+     * Create the operator's scorer for a retrieval model.
+     *
+     * @param r The retrieval model that determines how scores are calculated.
+     * @return The scorer.
+     */
+    protected abstract QryScorer createScorer(RetrievalModel r);
 
     /**
      * Initialize the query operator (and its arguments), including any
@@ -35,6 +77,7 @@ public abstract class QrySop extends Qry {
      * @throws IOException Error accessing the Lucene index.
      */
     public void initialize(RetrievalModel r) throws IOException {
+        this.resetScorer();
         for (Qry q_i : this.args) {
             q_i.initialize(r);
         }
@@ -24,91 +24,110 @@ public class QrySopAnd extends QrySop implements IIndriSop {
     }
 
     /**
-     * Get a score for the document that docIteratorHasMatch matched.
+     * Create the operator's scorer for a retrieval model.
      *
      * @param r The retrieval model that determines how scores are calculated.
-     * @return The document score.
-     * @throws IOException Error accessing the Lucene index
+     * @return The scorer.
      */
-    public double getScore(RetrievalModel r) throws IOException {
+    protected QryScorer createScorer(RetrievalModel r) {
         if (r instanceof RetrievalModelUnrankedBoolean) {
-            return this.getScoreUnrankedBoolean(r);
+            //  Unranked Boolean systems only have two scores:
+            //  1 (document matches) and 0 (document doesn't match).  QryEval
+            //  only calls getScore for documents that match, so if we get
+            //  here, the document matches, and its score should be 1.
+            return QryScorer.constant(1);
         } else if (r instanceof RetrievalModelRankedBoolean) {
-            return this.getScoreRankedBoolean(r);
+            return new RankedBooleanScorer(this, r);
         } else if (r instanceof Indri) {
-            return this.getScoreIndri(r);
+            return new IndriScorer(this, (Indri) r);
         } else {
-            throw new IllegalArgumentException(r.getClass().getName() + " doesn't support the AND operator.");
+            return QryScorer.unsupported(r, "AND");
         }
     }
 
-    private double getScoreIndri(RetrievalModel r) throws IOException {
-        int docid = this.docIteratorGetMatch();
-
-        double score = 0;
-        for (Qry arg : this.args) {
-            QrySop q = (QrySop) arg;
-            double qScore;
-            if (q.docIteratorHasMatch(r) && q.docIteratorGetMatch() == docid) {
-                qScore = q.getScore(r);
-            } else {
-                qScore = ((IIndriSop) q).getDefaultScore((Indri) r, docid);
-            }
+    @Override
+    public double getDefaultScore(Indri r, int docid) throws IOException {
+        return QryScorerIndri.of(this, r).defaultScore(docid);
+    }
 
-            score += Math.log(qScore);  // avoid precision problem
+    /**
+     * The scorer for the Indri retrieval model.
+     */
+    private static final class IndriScorer extends QryScorerIndri {
+        private final QrySopAnd q;
+        private final Indri r;
+        private final QrySop[] args;
+        private final QryScorerIndri[] argScorers;
+
+        private IndriScorer(QrySopAnd q, Indri r) {
+            this.q = q;
+            this.r = r;
+            this.args = QryScorer.sopArgs(q);
+            this.argScorers = QryScorerIndri.compileArgs(q, r);
         }
 
-        return Math.exp(score / this.args.size());
-    }
+        @Override
+        public double score() throws IOException {
+            int docid = this.q.docIteratorGetMatch();
 
-    public double getDefaultScore(Indri r, int docid) throws IOException {
-        double score = 0;
-        for (Qry arg : this.args) {
-            QrySop q = (QrySop) arg;
-            score += Math.log(
-                    ((IIndriSop) q).getDefaultScore(r, docid)
-            );
+            double score = 0;
+            for (int i = 0; i < this.args.length; i++) {
+                QrySop q_i = this.args[i];
+                double qScore;
+                if (q_i.docIteratorHasMatch(this.r) && q_i.docIteratorGetMatch() == docid) {
+                    qScore = this.argScorers[i].score();
+                } else {
+                    qScore = this.argScorers[i].defaultScore(docid);
+                }
+
+                score += Math.log(qScore);  // avoid precision problem
+            }
+
+            return Math.exp(score / this.args.length);
         }
-        return Math.exp(score / this.args.size());
-    }
 
-    /**
-     * getScore for the UnrankedBoolean retrieval model.
-     *
-     * @param r The retrieval model that determines how scores are calculated.
-     * @return The document score.
-     * @throws IOException Error accessing the Lucene index
-     */
-    private double getScoreUnrankedBoolean(RetrievalModel r) throws IOException {
-        //  Unranked Boolean systems only have two scores:
-        //  1 (document matches) and 0 (document doesn't match).  QryEval
-        //  only calls getScore for documents that match, so if we get
-        //  here, the document matches, and its score should be 1.  The
-        //  most efficient implementation returns 1 from here.
-        return 1;
+        @Override
+        public double defaultScore(int docid) throws IOException {
+            double score = 0;
+            for (QryScorerIndri argScorer : this.argScorers) {
+                score += Math.log(argScorer.defaultScore(docid));
+            }
+            return Math.exp(score / this.args.length);
+        }
     }
 
     /**
-     * getScore for the RankedBoolean retrieval model.
-     *
-     * @param r The retrieval model that determines how scores are calculated.
-     * @return The document score.
-     * @throws IOException Error accessing the Lucene index
+     * The scorer for the RankedBoolean retrieval model.
      */
-    private double getScoreRankedBoolean(RetrievalModel r) throws IOException {
-        double score = Double.MAX_VALUE;
-        int docid = this.docIteratorGetMatch();
+    private static final class RankedBooleanScorer extends QryScorer {
+        private final QrySopAnd q;
+        private final RetrievalModel r;
+        private final QrySop[] args;
+        private final QryScorer[] argScorers;
+
+        private RankedBooleanScorer(QrySopAnd q, RetrievalModel r) {
+            this.q = q;
+            this.r = r;
+            this.args = QryScorer.sopArgs(q);
+            this.argScorers = QryScorer.compileArgs(q, r);
+        }
 
-        for (int i = 0; i < this.args.size(); i++) {
-            QrySop q_i = (QrySop) this.args.get(i);
+        @Override
+        public double score() throws IOException {
+            double score = Double.MAX_VALUE;
+            int docid = this.q.docIteratorGetMatch();
 
-            if (!q_i.docIteratorHasMatch(r) || q_i.docIteratorGetMatch() != docid) { // one query not found
-                return 0;
-            } else { // get MIN of all query scores
-                score = Math.min(score, q_i.getScore(r));
+            for (int i = 0; i < this.args.length; i++) {
+                QrySop q_i = this.args[i];
+
+                if (!q_i.docIteratorHasMatch(this.r) || q_i.docIteratorGetMatch() != docid) { // one query not found
+                    return 0;
+                } else { // get MIN of all query scores
+                    score = Math.min(score, this.argScorers[i].score());
+                }
             }
-        }
 
-        return score;
+            return score;
+        }
     }
 }
@@ -4,12 +4,75 @@
 package search_engine;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
  * The SCORE operator for all retrieval models.
  */
 public class QrySopScore extends QrySop implements IIndriSop {
 
+    //  Statistics that don't depend on the document are computed once
+    //  per query and model (see prepare), so that scoring a document
+    //  costs a few arithmetic operations.  The operator keeps those of
+    //  the last model it scored; each scorer keeps its own, so scorers
+    //  of several models (see QrySweep) can score the same documents.
+
+    private BM25Stats bm25Stats = null;
+    private IndriStats indriStats = null;
+
+    /**
+     * The document-independent parts of the BM25 score of the argument.
+     */
+    private static final class BM25Stats {
+        private final BM25 model;
+        private final double rsjWeight;
+        private final double avgDocLen;
+        private final double k1;
+        private final double b;
+        private final double oneMinusB;
+
+        private BM25Stats(QryIop q, BM25 model) throws IOException {
+            long N = Idx.getNumDocs();
+            int df = q.getDf();
+
+            this.rsjWeight = Math.max(0, Math.log((N - df + 0.5) / (df + 0.5)));
+            this.avgDocLen = model.fieldTotalLengths.get(q.field) / (double) model.fieldDocCounts.get(q.field);
+            this.k1 = model.getK1();
+            this.b = model.getB();
+            this.oneMinusB = 1 - model.getB();
+            this.model = model;
+        }
+    }
+
+    /**
+     * The document-independent parts of the Indri score of the argument.
+     */
+    private static final class IndriStats {
+        private final Indri model;
+        private final double mu;
+        private final double muTimesPMLE;             // mu * pMLE
+        private final double muTimesDefaultPMLE;      // mu * pMLE, with ctf 0 smoothed to 0.5
+        private final double oneMinusLambda;          // 1 - lambda
+        private final double lambdaTimesPMLE;         // lambda * pMLE
+        private final double lambdaTimesDefaultPMLE;  // lambda * pMLE, with ctf 0 smoothed to 0.5
+
+        private IndriStats(QryIop q, Indri model) {
+            double fieldLength = model.fieldTotalLengths.get(q.field);
+
+            double ctf = q.getCtf();
+            double pMLE = ctf / fieldLength;
+            double defaultPMLE = ((ctf == 0) ? 0.5 : ctf) / fieldLength;
+
+            this.mu = model.getMu();
+            this.muTimesPMLE = model.getMu() * pMLE;
+            this.muTimesDefaultPMLE = model.getMu() * defaultPMLE;
+            this.oneMinusLambda = 1 - model.getLambda();
+            this.lambdaTimesPMLE = model.getLambda() * pMLE;
+            this.lambdaTimesDefaultPMLE = model.getLambda() * defaultPMLE;
+            this.model = model;
+        }
+    }
+
     /**
      * Indicates whether the query has a match.
      *
@@ -21,25 +84,78 @@ public class QrySopScore extends QrySop implements IIndriSop {
     }
 
     /**
-     * Get a score for the document that docIteratorHasMatch matched.
+     * Create the operator's scorer for a retrieval model.
      *
      * @param r The retrieval model that determines how scores are calculated.
-     * @return The document score.
-     * @throws IOException Error accessing the Lucene index
+     * @return The scorer.
      */
-    public double getScore(RetrievalModel r) throws IOException {
+    protected QryScorer createScorer(RetrievalModel r) {
         if (r instanceof RetrievalModelUnrankedBoolean) {
-            return this.getScoreUnrankedBoolean(r);
+            return QryScorer.constant(1.0);
         } else if (r instanceof RetrievalModelRankedBoolean) {
-            return this.getScoreRankedBoolean(r);
+            return new RankedBooleanScorer(this, r);
         } else if (r instanceof BM25) {
-            return this.getScoreBM25(r);
+            return new BM25Scorer(this, (BM25) r);
         } else if (r instanceof LTR) {
-            return this.getScoreBM25(((LTR) r).getBM25());
+            return new BM25Scorer(this, ((LTR) r).getBM25());
         } else if (r instanceof Indri) {
-            return this.getScoreIndri(r);
+            return new IndriScorer(this, (Indri) r);
         } else {
-            throw new IllegalArgumentException(r.getClass().getName() + " doesn't support the SCORE operator.");
+            return QryScorer.unsupported(r, "SCORE");
+        }
+    }
+
+    private static final class RankedBooleanScorer extends QryScorer {
+        private final QrySopScore q;
+        private final RetrievalModel r;
+
+        private RankedBooleanScorer(QrySopScore q, RetrievalModel r) {
+            this.q = q;
+            this.r = r;
+        }
+
+        @Override
+        public double score() throws IOException {
+            return this.q.getScoreRankedBoolean(this.r);
+        }
+    }
+
+    private static final class BM25Scorer extends QryScorer {
+        private final QrySopScore q;
+        private final BM25Stats stats;
+
+        private BM25Scorer(QrySopScore q, BM25 model) {
+            this.q = q;
+            try {
+                this.stats = q.getBM25Stats(model);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public double score() throws IOException {
+            return this.q.scoreBM25(this.stats);
+        }
+    }
+
+    private static final class IndriScorer extends QryScorerIndri {
+        private final QrySopScore q;
+        private final IndriStats stats;
+
+        private IndriScorer(QrySopScore q, Indri model) {
+            this.q = q;
+            this.stats = q.getIndriStats(model);
+        }
+
+        @Override
+        public double score() throws IOException {
+            return this.q.scoreIndri(this.stats);
+        }
+
+        @Override
+        public double defaultScore(int docid) throws IOException {
+            return this.q.defaultScoreIndri(this.stats, docid);
         }
     }
 
@@ -70,7 +186,7 @@ public class QrySopScore extends QrySop implements IIndriSop {
     public double getScoreRankedBoolean(RetrievalModel r) throws IOException {
         QryIop q = (QryIop) this.args.get(0);
         if (q.docIteratorHasMatch(r)) {
-            return q.docIteratorGetMatchPosting().tf; // term frequency
+            return q.docIteratorGetMatchTf(); // term frequency
         }
 
         return 0;
@@ -85,23 +201,57 @@ public class QrySopScore extends QrySop implements IIndriSop {
      */
     public double getScoreBM25(RetrievalModel r) throws IOException {
         assert this.docIteratorHasMatch(r);
+        return this.scoreBM25(this.getBM25Stats((BM25) r));
+    }
 
-        BM25 model = (BM25) r;
+    private double scoreBM25(BM25Stats stats) throws IOException {
         QryIop q = (QryIop) this.args.get(0);
 
         long docLen = Idx.getFieldLength(q.field, q.docIteratorGetMatch());
-        int tf = q.docIteratorGetMatchPosting().tf;
-        long N = Idx.getNumDocs();
-        double avgDocLen = model.fieldTotalLengths.get(q.field) / (double) model.fieldDocCounts.get(q.field);
-        int df = q.getDf();
+        int tf = q.docIteratorGetMatchTf();
 
-        double rsjWeight = Math.max(0, Math.log((N - df + 0.5) / (df + 0.5)));
         double termWeight = tf / (
-                tf + model.getK1() * (
-                        1 - model.getB() + model.getB() * docLen / avgDocLen
+                tf + stats.k1 * (
+                        stats.oneMinusB + stats.b * docLen / stats.avgDocLen
+                )
+        );
+        return stats.rsjWeight * termWeight;
+    }
+
+    /**
+     * An upper bound on the BM25 score of any document, from the
+     * term's idf and its largest tf.
+     *
+     * @param model The BM25 retrieval model.
+     * @return The largest possible document score.
+     * @throws IOException Error accessing the Lucene index
+     */
+    public double getMaxScoreBM25(BM25 model) throws IOException {
+        return this.getMaxScoreBM25(model, ((QryIop) this.args.get(0)).getMaxTf(), 0);
+    }
+
+    /**
+     * An upper bound on the BM25 score of the documents in a set, e.g.,
+     * a block of the inverted list.  The term weight grows with tf and
+     * shrinks with document length, so it is bounded by its value at
+     * the set's largest tf and smallest document length.
+     *
+     * @param model        The BM25 retrieval model.
+     * @param maxTf        The largest tf in the set, or Integer.MAX_VALUE if unknown.
+     * @param minDocLength The smallest document length in the set.
+     * @return The largest possible document score.
+     * @throws IOException Error accessing the Lucene index
+     */
+    public double getMaxScoreBM25(BM25 model, int maxTf, long minDocLength) throws IOException {
+        if (maxTf == 0) return 0;
+        BM25Stats stats = this.getBM25Stats(model);
+
+        double termWeight = (maxTf == Integer.MAX_VALUE) ? 1.0 : maxTf / (
+                maxTf + stats.k1 * (
+                        stats.oneMinusB + stats.b * minDocLength / stats.avgDocLen
                 )
         );
-        return rsjWeight * termWeight;
+        return stats.rsjWeight * termWeight;
     }
 
     /**
@@ -113,44 +263,91 @@ public class QrySopScore extends QrySop implements IIndriSop {
      */
     public double getScoreIndri(RetrievalModel r) throws IOException {
         assert this.docIteratorHasMatch(r);
+        return this.scoreIndri(this.getIndriStats((Indri) r));
+    }
 
-        Indri model = (Indri) r;
+    private double scoreIndri(IndriStats stats) throws IOException {
         QryIop q = (QryIop) this.args.get(0);
 
-        double pMLE = (double) q.getCtf() / model.fieldTotalLengths.get(q.field);
         double pDirichlet = (
-                q.docIteratorGetMatchPosting().tf + model.getMu() * pMLE
+                q.docIteratorGetMatchTf() + stats.muTimesPMLE
         ) / (
-                Idx.getFieldLength(q.field, q.docIteratorGetMatch()) + model.getMu()
+                Idx.getFieldLength(q.field, q.docIteratorGetMatch()) + stats.mu
         );
         if (Double.isNaN(pDirichlet)) pDirichlet = 0.0; // in case both mu and docLen are 0
 
-        return (1 - model.getLambda()) * pDirichlet + model.getLambda() * pMLE;
+        return stats.oneMinusLambda * pDirichlet + stats.lambdaTimesPMLE;
+    }
+
+    @Override
+    public double getDefaultScore(Indri r, int docid) throws IOException {
+        return QryScorerIndri.of(this, r).defaultScore(docid);
     }
 
     /**
      * getDefaultScore for Indri model.
      *
-     * @param r The retrieval model that determines how scores are calculated.
+     * @param r     The retrieval model that determines how scores are calculated.
+     * @param docid Internal Document ID
      * @return The document score.
      * @throws IOException Error accessing the Lucene index
      */
-    @Override
-    public double getDefaultScore(Indri r, int docid) throws IOException {
-        QryIop q = (QryIop) this.args.get(0);
+    public double getDefaultScoreIndri(Indri r, int docid) throws IOException {
+        return this.defaultScoreIndri(this.getIndriStats(r), docid);
+    }
 
-        double ctf = q.getCtf();
-        if (ctf == 0) ctf = 0.5;
+    private double defaultScoreIndri(IndriStats stats, int docid) throws IOException {
+        QryIop q = (QryIop) this.args.get(0);
 
-        double pMLE = ctf / r.fieldTotalLengths.get(q.field);
         double pDirichlet = (
-                0 + r.getMu() * pMLE
+                0 + stats.muTimesDefaultPMLE
         ) / (
-                Idx.getFieldLength(q.field, docid) + r.getMu()
+                Idx.getFieldLength(q.field, docid) + stats.mu
         );
         if (Double.isNaN(pDirichlet)) pDirichlet = 0.0; // in case both mu and docLen are 0
 
-        return (1 - r.getLambda()) * pDirichlet + r.getLambda() * pMLE;
+        return stats.oneMinusLambda * pDirichlet + stats.lambdaTimesDefaultPMLE;
+    }
+
+    /**
+     * Compute the document-independent parts of the scores of a
+     * retrieval model from the argument's df and ctf and the model's
+     * parameters.  This is done when the operator is initialized, and
+     * must be done again if the argument's statistics change afterwards
+     * (see QryIop.setIndexStatistics), before any scorer is compiled,
+     * since scorers keep the parts they were compiled with.  The parts
+     * are computed with the same operations, in the same order, as a
+     * per-document computation would use, so scores don't change.
+     *
+     * @param r The retrieval model.
+     * @throws IOException Error accessing the Lucene index
+     */
+    public void prepare(RetrievalModel r) throws IOException {
+        this.bm25Stats = null;
+        this.indriStats = null;
+        this.resetScorer();
+
+        if (r instanceof BM25) {
+            this.getBM25Stats((BM25) r);
+        } else if (r instanceof LTR) {
+            this.getBM25Stats(((LTR) r).getBM25());
+        } else if (r instanceof Indri) {
+            this.getIndriStats((Indri) r);
+        }
+    }
+
+    private BM25Stats getBM25Stats(BM25 model) throws IOException {
+        if ((this.bm25Stats == null) || (this.bm25Stats.model != model)) {
+            this.bm25Stats = new BM25Stats((QryIop) this.args.get(0), model);
+        }
+        return this.bm25Stats;
+    }
+
+    private IndriStats getIndriStats(Indri model) {
+        if ((this.indriStats == null) || (this.indriStats.model != model)) {
+            this.indriStats = new IndriStats((QryIop) this.args.get(0), model);
+        }
+        return this.indriStats;
     }
 
     /**
@@ -164,7 +361,15 @@ public class QrySopScore extends QrySop implements IIndriSop {
      */
     public void initialize(RetrievalModel r) throws IOException {
         Qry q = this.args.get(0);
+
+        //  A term that is scored directly never needs its locations.
+
+        if (q instanceof QryIopTerm) {
+            ((QryIopTerm) q).setPositionsRequired(false);
+        }
+
         q.initialize(r);
+        this.prepare(r);
     }
 
 }
@@ -4,11 +4,46 @@
 package search_engine;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * The SUM operator for BM25 and Indri model.
+ * <p>
+ * Under BM25, a #SUM of #SCORE arguments can be evaluated with MaxScore
+ * dynamic pruning (see evaluateTopK).  The arguments are sorted by the
+ * largest score they can contribute.  Once the top k documents are
+ * known well enough, the arguments whose bounds add up to less than
+ * the k'th best score can't put a document into the top k on their
+ * own, so only documents that match one of the other ("essential")
+ * arguments are considered, and a document is dropped as soon as its
+ * partial score plus the bounds of its unscored arguments falls below
+ * the k'th best score.
+ * </p><p>
+ * Block-Max WAND uses the same argument bounds to choose a pivot
+ * document:  the smallest docid that the arguments up to it (in docid
+ * order) could score into the top k.  Before the pivot is scored, the
+ * bounds of the inverted list blocks that contain it (see BlockMaxIndex)
+ * are checked, and if even they can't reach the k'th best score, every
+ * document up to the end of the nearest block is skipped.
+ * </p>
  */
 public class QrySopSum extends QrySop {
+
+    /**
+     * Dynamic pruning algorithms (see BM25.getPruning).
+     */
+    public static final String PRUNING_NONE = "none";
+    public static final String PRUNING_MAXSCORE = "maxscore";
+    public static final String PRUNING_BMW = "bmw";
+
+    /**
+     * Relative slack for comparing upper bounds to scores, so that
+     * floating point rounding in a sum of bounds never prunes a document
+     * whose actual score would have entered the top k.
+     */
+    private static final double BOUND_SLACK = 1e-9;
+
     /**
      * Indicates whether the query has a match.
      *
@@ -20,19 +55,18 @@ public class QrySopSum extends QrySop {
     }
 
     /**
-     * Get a score for the document that docIteratorHasMatch matched.
+     * Create the operator's scorer for a retrieval model.
      *
      * @param r The retrieval model that determines how scores are calculated.
-     * @return The document score.
-     * @throws IOException Error accessing the Lucene index
+     * @return The scorer.
      */
-    public double getScore(RetrievalModel r) throws IOException {
+    protected QryScorer createScorer(RetrievalModel r) {
         if (r instanceof BM25) {
-            return this.getScoreBM25(r);
+            return new BM25Scorer(this, r);
         } else if (r instanceof LTR) {
-            return this.getScoreBM25(((LTR) r).getBM25());
+            return new BM25Scorer(this, ((LTR) r).getBM25());
         } else {
-            throw new IllegalArgumentException(r.getClass().getName() + " doesn't support the SUM operator.");
+            return QryScorer.unsupported(r, "SUM");
         }
     }
 
@@ -44,15 +78,313 @@ public class QrySopSum extends QrySop {
      * @throws IOException Error accessing the Lucene index
      */
     public double getScoreBM25(RetrievalModel r) throws IOException {
-        double score = 0;
-        int docid = this.docIteratorGetMatch();
+        return this.getScorer(r).score();
+    }
+
+    /**
+     * The scorer for the BM25 retrieval model.
+     */
+    private static final class BM25Scorer extends QryScorer {
+        private final QrySopSum q;
+        private final RetrievalModel r;
+        private final QrySop[] args;
+        private final QryScorer[] argScorers;
+
+        private BM25Scorer(QrySopSum q, RetrievalModel r) {
+            this.q = q;
+            this.r = r;
+            this.args = QryScorer.sopArgs(q);
+            this.argScorers = QryScorer.compileArgs(q, r);
+        }
+
+        @Override
+        public double score() throws IOException {
+            double score = 0;
+            int docid = this.q.docIteratorGetMatch();
+
+            for (int i = 0; i < this.args.length; i++) {
+                QrySop q_i = this.args[i];
+                if (q_i.docIteratorHasMatch(this.r) && (q_i.docIteratorGetMatch() == docid)) {
+                    score += this.argScorers[i].score(); // user weight is 1 for #SUM
+                }
+            }
+            return score;
+        }
+    }
+
+    /**
+     * Indicates whether evaluateTopK can prune this query, i.e., pruning
+     * is enabled in the model, the model is BM25 (or LTR, which ranks
+     * with BM25), and every argument is a SCORE operator, whose score
+     * can be bounded.
+     *
+     * @param r The retrieval model.
+     * @return True if the query can be pruned.
+     */
+    public boolean canPrune(RetrievalModel r) {
+        if (!(r instanceof BM25) && !(r instanceof LTR)) return false;
+        BM25 model = (r instanceof LTR) ? ((LTR) r).getBM25() : (BM25) r;
+        if (model.getPruning().equals(PRUNING_NONE)) return false;
+
+        for (Qry q : this.args) {
+            if (!(q instanceof QrySopScore)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Evaluate the (initialized) query with dynamic pruning, adding its
+     * documents to a top-k collector.  The collector ends up with
+     * exactly the documents and scores that exhaustive evaluation would
+     * give it:  a document is only skipped if its score is certainly
+     * below the k'th best score, and the scores of other documents are
+     * added up in the same order as getScoreBM25 does.
+     *
+     * @param r       The retrieval model; canPrune(r) must be true.
+     * @param results The collector of the top k documents.
+     * @throws IOException Error accessing the Lucene index
+     */
+    public void evaluateTopK(RetrievalModel r, TopKCollector results) throws IOException {
+        BM25 model = (r instanceof LTR) ? ((LTR) r).getBM25() : (BM25) r;
+        if (model.getPruning().equals(PRUNING_BMW)) {
+            this.evaluateBlockMaxWand(r, results);
+        } else {
+            this.evaluateMaxScore(r, results);
+        }
+    }
+
+    /**
+     * evaluateTopK with MaxScore.
+     *
+     * @param r       The retrieval model.
+     * @param results The collector of the top k documents.
+     * @throws IOException Error accessing the Lucene index
+     */
+    private void evaluateMaxScore(RetrievalModel r, TopKCollector results) throws IOException {
+        BM25 model = (r instanceof LTR) ? ((LTR) r).getBM25() : (BM25) r;
+        int n = this.args.size();
+
+        //  Sort the arguments by upper bound.  boundSums[i] is the sum of
+        //  the bounds of the i arguments with the smallest bounds.
+
+        double[] bounds = new double[n];
+        Integer[] byBound = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            bounds[i] = ((QrySopScore) this.args.get(i)).getMaxScoreBM25(model);
+            byBound[i] = i;
+        }
+        Arrays.sort(byBound, Comparator.comparingDouble(i -> bounds[i]));
+
+        QrySop[] sorted = new QrySop[n];
+        double[] boundSums = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = (QrySop) this.args.get(byBound[i]);
+            boundSums[i + 1] = boundSums[i] + bounds[byBound[i]];
+        }
+
+        double[] argScores = new double[n];     // indexed like this.args
+        boolean[] argMatches = new boolean[n];
+        int firstEssential = 0;
+
+        while (true) {
+
+            //  The threshold only grows, so arguments only ever become
+            //  non-essential.
+
+            double threshold = results.minScore();
+            while ((firstEssential < n) && !mayEnter(boundSums[firstEssential + 1], threshold)) {
+                firstEssential++;
+            }
+            if (firstEssential == n) break;
 
-        for (Qry _q : this.args) {
-            QrySop q = (QrySop) _q;
-            if (q.docIteratorHasMatch(r) && (q.docIteratorGetMatch() == docid)) {
-                score += q.getScore(r); // user weight is 1 for #SUM
+            //  The next candidate is the smallest docid of an essential
+            //  argument.
+
+            int docid = Integer.MAX_VALUE;
+            for (int i = firstEssential; i < n; i++) {
+                if (sorted[i].docIteratorHasMatch(r)) {
+                    docid = Math.min(docid, sorted[i].docIteratorGetMatch());
+                }
+            }
+            if (docid == Integer.MAX_VALUE) break;
+
+            double partial = 0;
+            for (int i = firstEssential; i < n; i++) {
+                partial += this.scoreArg(r, sorted[i], byBound[i], docid, argScores, argMatches);
+            }
+
+            //  Score the non-essential arguments, largest bound first,
+            //  until the document can't enter the top k.
+
+            boolean pruned = false;
+            for (int i = firstEssential - 1; i >= 0; i--) {
+                if (!mayEnter(partial + boundSums[i + 1], threshold)) {
+                    pruned = true;
+                    break;
+                }
+                sorted[i].docIteratorAdvanceTo(docid);
+                partial += this.scoreArg(r, sorted[i], byBound[i], docid, argScores, argMatches);
+            }
+
+            if (!pruned) {
+                double score = 0;
+                for (int i = 0; i < n; i++) {
+                    if (argMatches[i]) score += argScores[i];
+                }
+                results.add(docid, score);
+            }
+
+            for (int i = firstEssential; i < n; i++) {
+                sorted[i].docIteratorAdvancePast(docid);
+            }
+        }
+    }
+
+    /**
+     * evaluateTopK with Block-Max WAND.
+     *
+     * @param r       The retrieval model.
+     * @param results The collector of the top k documents.
+     * @throws IOException Error accessing the Lucene index
+     */
+    private void evaluateBlockMaxWand(RetrievalModel r, TopKCollector results) throws IOException {
+        BM25 model = (r instanceof LTR) ? ((LTR) r).getBM25() : (BM25) r;
+        BlockMaxIndex blockMaxIndex = Idx.getBlockMaxIndex();
+        int n = this.args.size();
+
+        //  The bound of each argument, and of each of its blocks.  An
+        //  argument that has no blocks (e.g., a short list, or a #NEAR)
+        //  is a single block that ends after the last docid.
+
+        QrySop[] args = new QrySop[n];
+        double[] bounds = new double[n];
+        int[][] blockEnds = new int[n][];
+        double[][] blockBounds = new double[n][];
+        int[] blockCursors = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            QrySopScore q = (QrySopScore) this.args.get(i);
+            QryIop arg = q.getArg(0);
+            BlockMaxIndex.TermBlocks blocks = ((blockMaxIndex != null) && (arg instanceof QryIopTerm)) ?
+                    blockMaxIndex.get(arg.getField(), ((QryIopTerm) arg).getTerm()) : null;
+
+            args[i] = q;
+            bounds[i] = q.getMaxScoreBM25(model);
+
+            if (blocks == null) {
+                blockEnds[i] = new int[]{Integer.MAX_VALUE};
+                blockBounds[i] = new double[]{bounds[i]};
+            } else {
+                blockEnds[i] = blocks.lastDocids;
+                blockBounds[i] = new double[blocks.size()];
+                for (int b = 0; b < blocks.size(); b++) {
+                    blockBounds[i][b] = q.getMaxScoreBM25(model, blocks.maxTfs[b], blocks.minFieldLengths[b]);
+                }
+            }
+        }
+
+        int[] docids = new int[n];
+        int[] byDocid = new int[n];
+        for (int i = 0; i < n; i++) byDocid[i] = i;
+
+        while (true) {
+
+            //  Sort the arguments by their current docid (insertion sort,
+            //  since few arguments move between iterations).
+
+            for (int i = 0; i < n; i++) {
+                docids[i] = args[i].docIteratorHasMatch(r) ? args[i].docIteratorGetMatch() : Integer.MAX_VALUE;
+            }
+            for (int i = 1; i < n; i++) {
+                int a = byDocid[i];
+                int j = i - 1;
+                while ((j >= 0) && (docids[byDocid[j]] > docids[a])) {
+                    byDocid[j + 1] = byDocid[j];
+                    j--;
+                }
+                byDocid[j + 1] = a;
+            }
+
+            //  Find the pivot.  A document before it can only match
+            //  arguments whose bounds add up to less than the threshold.
+
+            double threshold = results.minScore();
+            double boundSum = 0;
+            int pivot = -1;
+            for (int i = 0; i < n; i++) {
+                if (docids[byDocid[i]] == Integer.MAX_VALUE) break;
+                boundSum += bounds[byDocid[i]];
+                if (mayEnter(boundSum, threshold)) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) break;
+
+            int pivotDocid = docids[byDocid[pivot]];
+            while ((pivot + 1 < n) && (docids[byDocid[pivot + 1]] == pivotDocid)) pivot++;
+
+            //  Check the bounds of the blocks that contain the pivot
+            //  document.  Until the end of the nearest block, and the
+            //  next docid of the other arguments, no document can score
+            //  more than that.
+
+            double blockBoundSum = 0;
+            long nextDocid = (pivot + 1 < n) ? docids[byDocid[pivot + 1]] : Integer.MAX_VALUE;
+            for (int i = 0; i <= pivot; i++) {
+                int a = byDocid[i];
+                int b = blockCursors[a];
+                while ((b < blockEnds[a].length) && (blockEnds[a][b] < pivotDocid)) b++;
+                blockCursors[a] = b;
+
+                if (b < blockEnds[a].length) {
+                    blockBoundSum += blockBounds[a][b];
+                    nextDocid = Math.min(nextDocid, (long) blockEnds[a][b] + 1);
+                }
+            }
+
+            if (!mayEnter(blockBoundSum, threshold)) {
+                int target = (int) Math.min(nextDocid, Integer.MAX_VALUE);
+                for (int i = 0; i <= pivot; i++) {
+                    args[byDocid[i]].docIteratorAdvanceTo(target);
+                }
+            } else if (docids[byDocid[0]] == pivotDocid) {
+                double score = 0;
+                for (int i = 0; i < n; i++) {
+                    if (docids[i] == pivotDocid) score += args[i].getScore(r);
+                }
+                results.add(pivotDocid, score);
+
+                for (int i = 0; i <= pivot; i++) {
+                    args[byDocid[i]].docIteratorAdvancePast(pivotDocid);
+                }
+            } else {
+                for (int i = 0; docids[byDocid[i]] < pivotDocid; i++) {
+                    args[byDocid[i]].docIteratorAdvanceTo(pivotDocid);
+                }
             }
         }
-        return score;
+    }
+
+    /**
+     * Score one argument of evaluateMaxScore for a document, if the argument
+     * matches it, and remember the result.
+     *
+     * @return The argument's score, or 0 if it doesn't match.
+     */
+    private double scoreArg(RetrievalModel r, QrySop q, int argIndex, int docid,
+                            double[] argScores, boolean[] argMatches) throws IOException {
+        argMatches[argIndex] = q.docIteratorHasMatch(r) && (q.docIteratorGetMatch() == docid);
+        argScores[argIndex] = argMatches[argIndex] ? q.getScore(r) : 0;
+        return argScores[argIndex];
+    }
+
+    /**
+     * Whether a document whose score is at most bound may still enter
+     * a top k whose k'th best score is threshold.  A tie may enter on
+     * external docid.
+     */
+    private static boolean mayEnter(double bound, double threshold) {
+        return bound + BOUND_SLACK * Math.abs(bound) >= threshold;
     }
 }
@@ -21,47 +21,71 @@ public class QrySopWAnd extends QrySopWeighted implements IIndriSop {
     }
 
     /**
-     * Get a score for the document that docIteratorHasMatch matched.
+     * Create the operator's scorer for a retrieval model.
      *
      * @param r The retrieval model that determines how scores are calculated.
-     * @return The document score.
-     * @throws IOException Error accessing the Lucene index
+     * @return The scorer.
      */
-    public double getScore(RetrievalModel r) throws IOException {
+    protected QryScorer createScorer(RetrievalModel r) {
         if (r instanceof Indri) {
-            return this.getScoreIndri(r);
+            return new IndriScorer(this, (Indri) r);
         } else {
-            throw new IllegalArgumentException(r.getClass().getName() + " doesn't support the WAND operator.");
+            return QryScorer.unsupported(r, "WAND");
         }
     }
 
-    private double getScoreIndri(RetrievalModel r) throws IOException {
-        int docid = this.docIteratorGetMatch();
+    @Override
+    public double getDefaultScore(Indri r, int docid) throws IOException {
+        return QryScorerIndri.of(this, r).defaultScore(docid);
+    }
 
-        double score = 0;
-        for (int i = 0; i < this.args.size(); ++i) {
-            QrySop q = (QrySop) this.args.get(i);
-            double qScore;
-            if (q.docIteratorHasMatch(r) && q.docIteratorGetMatch() == docid) {
-                qScore = q.getScore(r);
-            } else {
-                qScore = ((IIndriSop) q).getDefaultScore((Indri) r, docid);
-            }
+    /**
+     * The scorer for the Indri retrieval model.
+     */
+    private static final class IndriScorer extends QryScorerIndri {
+        private final QrySopWAnd q;
+        private final Indri r;
+        private final QrySop[] args;
+        private final QryScorerIndri[] argScorers;
+        private final double[] weights;
 
-            score += this.weights.get(i) * Math.log(qScore);
+        private IndriScorer(QrySopWAnd q, Indri r) {
+            this.q = q;
+            this.r = r;
+            this.args = QryScorer.sopArgs(q);
+            this.argScorers = QryScorerIndri.compileArgs(q, r);
+            this.weights = q.getWeights();
         }
 
-        return Math.exp(score / weightSum);
-    }
+        @Override
+        public double score() throws IOException {
+            int docid = this.q.docIteratorGetMatch();
 
-    public double getDefaultScore(Indri r, int docid) throws IOException {
-        double score = 0;
-        for (int i = 0; i < this.args.size(); ++i) {
-            QrySop q = (QrySop) this.args.get(i);
-            score += this.weights.get(i) * Math.log(
-                    ((IIndriSop) q).getDefaultScore(r, docid)
-            );
+            double score = 0;
+            for (int i = 0; i < this.args.length; ++i) {
+                QrySop q_i = this.args[i];
+                double qScore;
+                if (q_i.docIteratorHasMatch(this.r) && q_i.docIteratorGetMatch() == docid) {
+                    qScore = this.argScorers[i].score();
+                } else {
+                    qScore = this.argScorers[i].defaultScore(docid);
+                }
+
+                score += this.weights[i] * Math.log(qScore);
+            }
+
+            return Math.exp(score / this.q.weightSum);
+        }
+
+        @Override
+        public double defaultScore(int docid) throws IOException {
+            double score = 0;
+            for (int i = 0; i < this.args.length; ++i) {
+                score += this.weights[i] * Math.log(
+                        this.argScorers[i].defaultScore(docid)
+                );
+            }
+            return Math.exp(score / this.q.weightSum);
         }
-        return Math.exp(score / weightSum);
     }
 }
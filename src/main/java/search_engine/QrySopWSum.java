@@ -21,51 +21,67 @@ public class QrySopWSum extends QrySopWeighted implements IIndriSop {
     }
 
     /**
-     * Get a score for the document that docIteratorHasMatch matched.
+     * Create the operator's scorer for a retrieval model.
      *
      * @param r The retrieval model that determines how scores are calculated.
-     * @return The document score.
-     * @throws IOException Error accessing the Lucene index
+     * @return The scorer.
      */
-    public double getScore(RetrievalModel r) throws IOException {
+    protected QryScorer createScorer(RetrievalModel r) {
         if (r instanceof Indri) {
-            return this.getScoreIndri(r);
+            return new IndriScorer(this, (Indri) r);
         } else {
-            throw new IllegalArgumentException(r.getClass().getName() + " doesn't support the WSUM operator.");
+            return QryScorer.unsupported(r, "WSUM");
         }
     }
 
+    @Override
+    public double getDefaultScore(Indri r, int docid) throws IOException {
+        return QryScorerIndri.of(this, r).defaultScore(docid);
+    }
+
     /**
-     * getScore for Indri model.
-     *
-     * @param r The retrieval model that determines how scores are calculated.
-     * @return The document score.
-     * @throws IOException Error accessing the Lucene index
+     * The scorer for the Indri retrieval model.
      */
-    public double getScoreIndri(RetrievalModel r) throws IOException {
-        double score = 0;
-        int docid = this.docIteratorGetMatch();
+    private static final class IndriScorer extends QryScorerIndri {
+        private final QrySopWSum q;
+        private final Indri r;
+        private final QrySop[] args;
+        private final QryScorerIndri[] argScorers;
+        private final double[] weights;
 
-        for (int i = 0; i < this.args.size(); ++i) {
-            QrySop q = (QrySop) this.args.get(i);
-            if (q.docIteratorHasMatch(r) && (q.docIteratorGetMatch() == docid)) {
-                score += this.weights.get(i) * q.getScore(r);
-            } else {
-                score += this.weights.get(i) * ((IIndriSop) q).getDefaultScore((Indri) r, docid);
+        private IndriScorer(QrySopWSum q, Indri r) {
+            this.q = q;
+            this.r = r;
+            this.args = QryScorer.sopArgs(q);
+            this.argScorers = QryScorerIndri.compileArgs(q, r);
+            this.weights = q.getWeights();
+        }
+
+        @Override
+        public double score() throws IOException {
+            double score = 0;
+            int docid = this.q.docIteratorGetMatch();
+
+            for (int i = 0; i < this.args.length; ++i) {
+                QrySop q_i = this.args[i];
+                if (q_i.docIteratorHasMatch(this.r) && (q_i.docIteratorGetMatch() == docid)) {
+                    score += this.weights[i] * this.argScorers[i].score();
+                } else {
+                    score += this.weights[i] * this.argScorers[i].defaultScore(docid);
+                }
             }
+            return score / this.q.weightSum;
         }
-        return score / weightSum;
-    }
 
-    @Override
-    public double getDefaultScore(Indri r, int docid) throws IOException {
-        double score = 0;
+        @Override
+        public double defaultScore(int docid) throws IOException {
+            double score = 0;
 
-        for (int i = 0; i < this.args.size(); ++i) {
-            QrySop q = (QrySop) this.args.get(i);
-            double argWeight = this.weights.get(i) / weightSum;
-            score += argWeight * ((IIndriSop) q).getDefaultScore(r, docid);
+            for (int i = 0; i < this.args.length; ++i) {
+                double argWeight = this.weights[i] / this.q.weightSum;
+                score += argWeight * this.argScorers[i].defaultScore(docid);
+            }
+            return score;
         }
-        return score;
     }
 }
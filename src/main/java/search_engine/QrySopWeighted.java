@@ -19,6 +19,19 @@ public abstract class QrySopWeighted extends QrySop implements IWeightedSop {
         }
     }
 
+    /**
+     * Get the weights of the arguments.
+     *
+     * @return The weights, indexed like args.
+     */
+    public double[] getWeights() {
+        double[] w = new double[this.weights.size()];
+        for (int i = 0; i < w.length; i++) {
+            w[i] = this.weights.get(i);
+        }
+        return w;
+    }
+
     @Override
     public void appendWeightedArg(Qry q, double weight) throws IllegalArgumentException {
         this.appendArg(q);
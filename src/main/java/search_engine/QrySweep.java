@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates a query file for a grid of retrieval model parameters in
+ * one run, instead of one QryEval run per parameter file.  The index
+ * is opened once, and each query is parsed, its inverted lists are
+ * read, and its documents are visited once; every document is scored
+ * for every setting (see SearchEngine.processQueryFileSweep).
+ * <p>
+ * The parameter file is a QryEval parameter file.  Parameters of the
+ * form sweep:key=v1,v2,... give the values of a swept parameter; the
+ * grid is every combination of the values.  A swept parameter doesn't
+ * need a value of its own.  The parameters that may be swept are
+ * trecEvalOutputLength and the parameters of retrievalAlgorithm:
+ * </p>
+ * <pre>
+ *   BM25:   BM25:b, BM25:k_1, BM25:k_3
+ *   Indri:  Indri:mu, Indri:lambda
+ * </pre>
+ * <p>
+ * The results of each setting are written to trecEvalOutputPath, with
+ * the setting inserted before the extension, e.g.,
+ * out_mu=1000_lambda=0.4.teIn.  Each file is the same as that of a
+ * QryEval run with the setting.  Only queries are evaluated; PRF, LTR,
+ * and diversification are not available.
+ * </p>
+ */
+public class QrySweep {
+
+    //  --------------- Constants and variables -----------------------
+
+    private static final String USAGE = "Usage:  java QrySweep paramFile\n\n";
+
+    /**
+     * The parameters that may be swept, in the order that they vary in
+     * the grid (the last varies fastest).
+     */
+    private static final String[] SWEEPABLE = {
+            "BM25:b", "BM25:k_1", "BM25:k_3", "Indri:mu", "Indri:lambda", "trecEvalOutputLength"
+    };
+
+    //  --------------- Methods ---------------------------------------
+
+    /**
+     * @param args The only argument is the parameter file name.
+     * @throws Exception Error accessing the Lucene index.
+     */
+    public static void main(String[] args) throws Exception {
+        Timer timer = new Timer();
+        timer.start();
+
+        if (args.length < 1) {
+            throw new IllegalArgumentException(USAGE);
+        }
+        Map<String, String> parameters = QryEval.readParameterFile(
+                args[0], "indexPath", "queryFilePath", "trecEvalOutputPath", "retrievalAlgorithm");
+
+        List<Map<String, String>> grid = getGrid(parameters);
+        RetrievalModel[] models = new RetrievalModel[grid.size()];
+        int[] k = new int[grid.size()];
+
+        //  A swept parameter needn't have a value of its own, so the
+        //  engine is built with the first setting.
+
+        Map<String, String> first = new HashMap<>(parameters);
+        first.putAll(grid.get(0));
+        List<Map<String, ScoreList>> results;
+        try (SearchEngine se = new SearchEngine(first)) {
+            for (int c = 0; c < grid.size(); c++) {
+                Map<String, String> setting = new HashMap<>(parameters);
+                setting.putAll(grid.get(c));
+                models[c] = SearchEngine.createModel(setting);
+                k[c] = Integer.parseInt(setting.get("trecEvalOutputLength"));
+            }
+
+            results = se.processQueryFileSweep(parameters.get("queryFilePath"), models, k);
+        }
+
+        for (int c = 0; c < grid.size(); c++) {
+            String path = getOutputPath(parameters.get("trecEvalOutputPath"), grid.get(c));
+            QryEval.writeResults(results.get(c), path, k[c]);
+            System.out.println("Wrote " + path);
+        }
+
+        timer.stop();
+        System.out.println("Total running time:  " + timer);
+    }
+
+    /**
+     * Get the settings of the swept parameters.
+     *
+     * @param parameters The parameters of the parameter file.
+     * @return The settings, each a map from swept parameter to value.
+     */
+    static List<Map<String, String>> getGrid(Map<String, String> parameters) {
+        List<String> sweepable = List.of(SWEEPABLE);
+        String retrievalAlgorithm = parameters.get("retrievalAlgorithm");
+        for (String key : parameters.keySet()) {
+            if (!key.startsWith("sweep:")) continue;
+
+            String swept = key.substring("sweep:".length());
+            if (!sweepable.contains(swept)) {
+                throw new IllegalArgumentException("Parameter " + swept + " can't be swept");
+            }
+            int colon = swept.indexOf(':');
+            if ((colon >= 0) && !swept.substring(0, colon).equalsIgnoreCase(retrievalAlgorithm)) {
+                throw new IllegalArgumentException(
+                        "Parameter " + swept + " isn't a parameter of retrievalAlgorithm " + retrievalAlgorithm);
+            }
+        }
+
+        List<Map<String, String>> grid = new ArrayList<>();
+        grid.add(new HashMap<>());
+        boolean swept = false;
+        for (String key : SWEEPABLE) {
+            String values = parameters.get("sweep:" + key);
+            if (values == null) continue;
+
+            swept = true;
+            List<Map<String, String>> next = new ArrayList<>();
+            for (Map<String, String> setting : grid) {
+                for (String value : values.split(",")) {
+                    Map<String, String> s = new HashMap<>(setting);
+                    s.put(key, value.trim());
+                    next.add(s);
+                }
+            }
+            grid = next;
+        }
+
+        if (!swept) {
+            throw new IllegalArgumentException("No sweep: parameters");
+        }
+        return grid;
+    }
+
+    /**
+     * Get the output file of a setting:  trecEvalOutputPath with the
+     * setting inserted before the extension.
+     */
+    static String getOutputPath(String trecEvalOutputPath, Map<String, String> setting) {
+        StringBuilder suffix = new StringBuilder();
+        for (String key : SWEEPABLE) {
+            String value = setting.get(key);
+            if (value == null) continue;
+            suffix.append('_').append(key.substring(key.indexOf(':') + 1)).append('=').append(value);
+        }
+
+        int dot = trecEvalOutputPath.lastIndexOf('.');
+        int slash = Math.max(trecEvalOutputPath.lastIndexOf('/'), trecEvalOutputPath.lastIndexOf('\\'));
+        if (dot <= slash) dot = trecEvalOutputPath.length();
+        return trecEvalOutputPath.substring(0, dot) + suffix + trecEvalOutputPath.substring(dot);
+    }
+}
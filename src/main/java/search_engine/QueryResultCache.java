@@ -0,0 +1,310 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A cache of query results, so a query that was already evaluated with
+ * the same retrieval model returns its ranking without reading any
+ * postings.  Parameter sweeps and PRF experiments evaluate the same
+ * queries many times.
+ * <p>
+ * A result is keyed by the index, the retrieval model's signature, and
+ * the optimized query tree (Qry.toString, with operator names in lower
+ * case).  The result of a query evaluated for its top k documents also
+ * answers the query for any smaller k.
+ * </p><p>
+ * Results are kept in memory in least-recently-used order, up to a
+ * budget of bytes.  If the cache has a directory, every result is also
+ * written there, one file per result, and a result that isn't in
+ * memory is read from there; the directory isn't bounded.  The index
+ * version is part of the key, so results of an older version of an
+ * index are never used.
+ * </p>
+ */
+public class QueryResultCache {
+
+    //  --------------- Constants and variables -----------------------
+
+    private static final int MAGIC = 0x51524348;   // "QRCH"
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The approximate memory used by an entry, not counting its
+     * documents and key.
+     */
+    private static final long ENTRY_OVERHEAD = 128;
+
+    private static final SharedCache<QueryResultCache> shared = new SharedCache<>();
+
+    private final long maxBytes;
+    private final Path dir;
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+
+    /**
+     * key -> result, in least-recently-used order.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    //  --------------- Nested classes --------------------------------
+
+    /**
+     * A cached result:  the top documents of a query evaluated for its
+     * top k documents.  If there are fewer than k documents, they are
+     * all of the query's documents.
+     */
+    private static class Entry {
+        private final int k;
+        private final int[] docids;
+        private final double[] scores;
+        private final long bytes;
+
+        private Entry(int k, int[] docids, double[] scores, String key) {
+            this.k = k;
+            this.docids = docids;
+            this.scores = scores;
+            this.bytes = ENTRY_OVERHEAD + 2L * key.length() + 12L * docids.length;
+        }
+
+        /**
+         * Whether this entry has the top k documents of its query.
+         */
+        private boolean answers(int k) {
+            return (k <= this.k) || (this.docids.length < this.k);
+        }
+
+        private ScoreList toScoreList(int k) {
+            ScoreList r = new ScoreList();
+            int n = Math.min(k, this.docids.length);
+            for (int i = 0; i < n; i++) {
+                r.add(this.docids[i], null, this.scores[i]);
+            }
+            return r;
+        }
+    }
+
+    //  --------------- Methods ---------------------------------------
+
+    private QueryResultCache(long maxBytes, Path dir) {
+        this.maxBytes = maxBytes;
+        this.dir = dir;
+    }
+
+    /**
+     * Get the process's cache (see SharedCache).
+     *
+     * @param maxBytes The memory budget, in bytes.
+     * @param dir      The directory of the on-disk cache, or null.
+     * @return The cache.
+     * @throws IOException Error creating the directory.
+     */
+    public static QueryResultCache open(long maxBytes, String dir) throws IOException {
+        Path path = (dir == null || dir.isEmpty()) ? null : Paths.get(dir).toAbsolutePath().normalize();
+        if (path != null) Files.createDirectories(path);
+
+        return shared.open(Arrays.asList(maxBytes, path), () -> new QueryResultCache(maxBytes, path));
+    }
+
+    /**
+     * Get the cache key of a query.  The query must not have been
+     * evaluated yet.
+     *
+     * @param m The retrieval model.
+     * @param q The parsed and optimized query.
+     * @return The key.
+     */
+    public static String key(RetrievalModel m, Qry q) {
+        return Idx.getIndexSignature() + "\n" + m.getSignature() + "\n" + q.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Get the top k documents of a query, if they are cached.
+     *
+     * @param key The query's key.
+     * @param k   The number of documents wanted.
+     * @return A new ScoreList of the documents, sorted, or null if the
+     * query isn't cached for k documents.
+     */
+    public ScoreList get(String key, int k) {
+        synchronized (this) {
+            Entry e = this.entries.get(key);
+            if ((e != null) && e.answers(k)) {
+                this.hits++;
+                return e.toScoreList(k);
+            }
+        }
+
+        Entry e = this.read(key);
+        synchronized (this) {
+            if ((e != null) && e.answers(k)) {
+                this.diskHits++;
+                this.putInMemory(key, e);
+                return e.toScoreList(k);
+            }
+            this.misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Cache the result of a query.
+     *
+     * @param key     The query's key.
+     * @param k       The number of documents the query was evaluated for.
+     * @param results The query's top k documents, sorted.
+     */
+    public void put(String key, int k, ScoreList results) {
+        int n = Math.min(k, results.size());
+        int[] docids = new int[n];
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) {
+            docids[i] = results.getDocid(i);
+            scores[i] = results.getDocidScore(i);
+        }
+        Entry e = new Entry(k, docids, scores, key);
+
+        synchronized (this) {
+            Entry old = this.entries.get(key);
+            if ((old != null) && (old.k >= k)) return;
+            this.putInMemory(key, e);
+        }
+
+        this.write(key, e);
+    }
+
+    /**
+     * Add an entry to memory, and evict the least recently used entries
+     * until the cache is within its budget.
+     */
+    private void putInMemory(String key, Entry e) {
+        Entry old = this.entries.put(key, e);
+        if (old != null) this.bytes -= old.bytes;
+        this.bytes += e.bytes;
+
+        Iterator<Entry> lru = this.entries.values().iterator();
+        while ((this.bytes > this.maxBytes) && lru.hasNext()) {
+            this.bytes -= lru.next().bytes;
+            lru.remove();
+        }
+    }
+
+    /**
+     * @return The number of lookups answered from memory.
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * @return The number of lookups answered from the directory.
+     */
+    public synchronized long getDiskHits() {
+        return this.diskHits;
+    }
+
+    /**
+     * @return The number of lookups that weren't answered.
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d entries, %d KB, %d hits, %d disk hits, %d misses",
+                this.entries.size(), this.bytes / 1024, this.hits, this.diskHits, this.misses);
+    }
+
+    //  --------------- On-disk cache ---------------------------------
+
+    private Path file(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return this.dir.resolve(String.format("%064x", new BigInteger(1, digest)) + ".qrc");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Read an entry from the directory.  A missing, unreadable, or
+     * colliding file is a miss.
+     */
+    private Entry read(String key) {
+        if (this.dir == null) return null;
+
+        Path path = this.file(key);
+        if (!Files.exists(path)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if ((in.readInt() != MAGIC) || (in.readInt() != FORMAT_VERSION)) return null;
+
+            byte[] keyBytes = new byte[in.readInt()];
+            in.readFully(keyBytes);
+            if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8))) return null;
+
+            int k = in.readInt();
+            int n = in.readInt();
+            int[] docids = new int[n];
+            double[] scores = new double[n];
+            for (int i = 0; i < n; i++) {
+                docids[i] = in.readInt();
+                scores[i] = in.readDouble();
+            }
+            return new Entry(k, docids, scores, key);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Write an entry to the directory.  The entry is written to a
+     * temporary file first, so a reader never sees a partial file.  A
+     * failure is reported but not fatal; the result just isn't cached
+     * on disk.
+     */
+    private void write(String key, Entry e) {
+        if (this.dir == null) return;
+
+        Path path = this.file(key);
+        try {
+            Path tmp = Files.createTempFile(this.dir, path.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+
+                out.writeInt(e.k);
+                out.writeInt(e.docids.length);
+                for (int i = 0; i < e.docids.length; i++) {
+                    out.writeInt(e.docids[i]);
+                    out.writeDouble(e.scores[i]);
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            System.err.println("Unable to write " + path + ": " + ex);
+        }
+    }
+}
@@ -11,10 +11,53 @@ package search_engine;
  */
 public abstract class RetrievalModel {
 
+    /**
+     *  How TERM operators read their inverted lists:  from Lucene as
+     *  they are iterated (see InvListStream), or materialized, through
+     *  invListCache if it isn't null.
+     */
+    private boolean streaming = false;
+    private InvListCache invListCache = null;
+
+    /**
+     *  @return True if TERM operators stream their postings.
+     */
+    public boolean isStreaming() {
+        return this.streaming;
+    }
+
+    /**
+     *  @return The cache of materialized inverted lists, or null.
+     */
+    public InvListCache getInvListCache() {
+        return this.invListCache;
+    }
+
+    /**
+     *  Set how TERM operators read their inverted lists.  This is
+     *  only called while the model is built (see SearchEngine.createModel).
+     *  @param streaming True if TERM operators stream their postings.
+     *  @param invListCache The cache of materialized inverted lists, or null.
+     */
+    void setPostings(boolean streaming, InvListCache invListCache) {
+        this.streaming = streaming;
+        this.invListCache = invListCache;
+    }
+
     /**
      *  The name of the default query operator for the retrieval model.
      *  @return The name of the default query operator.
      */
     public abstract String defaultQrySopName();
 
+    /**
+     *  A description of the retrieval model and its parameters.  Two
+     *  models with the same signature rank documents identically, so
+     *  it can be used to cache query results.
+     *  @return The model's signature.
+     */
+    public String getSignature() {
+        return this.getClass().getSimpleName();
+    }
+
 }
@@ -4,6 +4,7 @@
 package search_engine;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 /**
@@ -13,7 +14,9 @@ import java.util.*;
 public class ScoreList {
 
     //  A utility class to create a <internalDocid, externalDocid, score>
-    //  object.
+    //  object.  The external docid is looked up the first time it is
+    //  needed (tie-breaking, output), so documents that are truncated
+    //  away never pay for it.
 
     private class ScoreListEntry {
         private int docid;
@@ -25,6 +28,17 @@ public class ScoreList {
             this.externalId = externalId;
             this.score = score;
         }
+
+        private String getExternalId() {
+            if (this.externalId == null) {
+                try {
+                    this.externalId = Idx.getExternalDocid(this.docid);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            return this.externalId;
+        }
     }
 
     /**
@@ -41,13 +55,26 @@ public class ScoreList {
     }
 
     /**
-     * Append a document score to a score list.
+     * Append a document score to a score list.  The document's external
+     * id is not looked up until it is needed.
      *
      * @param docid An internal document id.
      * @param score The document's score.
      */
     public void add(int docid, double score) throws IOException {
-        scores.add(new ScoreListEntry(docid, Idx.getExternalDocid(docid), score));
+        scores.add(new ScoreListEntry(docid, null, score));
+    }
+
+    /**
+     * Append a document score to a score list.
+     *
+     * @param docid      An internal document id.
+     * @param externalId The document's external id, or null if it
+     *                   should be looked up when needed.
+     * @param score      The document's score.
+     */
+    void add(int docid, String externalId, double score) {
+        scores.add(new ScoreListEntry(docid, externalId, score));
     }
 
     /**
@@ -78,7 +105,7 @@ public class ScoreList {
      * @return The external document id.
      */
     public String getExternalDocid(int n) {
-        return this.scores.get(n).externalId;
+        return this.scores.get(n).getExternalId();
     }
 
     /**
@@ -122,7 +149,7 @@ public class ScoreList {
                 return -1;
             else if (s1.score < s2.score)
                 return 1;
-            else return s1.externalId.compareTo(s2.externalId); // lexicographical comparison of external id
+            else return s1.getExternalId().compareTo(s2.getExternalId()); // lexicographical comparison of external id
         }
     }
 
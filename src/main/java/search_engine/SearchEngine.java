@@ -2,8 +2,15 @@ package search_engine;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class SearchEngine implements AutoCloseable {
+    static final int NUM_LTR_FEATURES = 20;
 
-public class SearchEngine {
     private RetrievalModel model = null;
     private String retrievalAlgorithm = null;
     private Map<String, String> parameters = null;
@@ -14,19 +21,115 @@ public class SearchEngine {
     private String initialRankingFile = null;
     private String diversityInitialRankingFile = null;
     private int evalOutputLength = 1000;
+    private int numThreads = 1;
+    private int queryPartitions = 1;
+    private ForkJoinPool partitionPool = null;
+    private QueryResultCache resultCache = null;
+    private TermVectorCache termVectorCache = null;
+    private boolean ltrInProcess = false;
 
     public RetrievalModel getModel() {
         return model;
     }
 
+    public QueryResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public TermVectorCache getTermVectorCache() {
+        return termVectorCache;
+    }
+
     /**
      * Allocate the retrieval model and initialize it using parameters.
      */
     public SearchEngine(Map<String, String> parameters) throws IOException {
         this.parameters = parameters;
-        Idx.open(parameters.get("indexPath"));
+        Timer timer = new Timer();
+        timer.start();
+        Idx.open(
+                parameters.get("indexPath"),
+                Boolean.parseBoolean(parameters.getOrDefault("idx:denseFieldLengths", "false"))
+        );
+        timer.stop();
+        System.out.println("Time used for opening the index: " + timer);
 
         retrievalAlgorithm = parameters.get("retrievalAlgorithm").toLowerCase();
+        model = createModel(parameters);
+
+        // Read params
+        prf = parameters.getOrDefault("prf", "false"); // Pseudo Relevance Feedback (PRF)
+        expansionField = parameters.getOrDefault("prf:expansionField", "body");
+        expansionQryOutFile = parameters.getOrDefault("prf:expansionQueryFile", "");
+        initialRankingFile = parameters.getOrDefault("prf:initialRankingFile", "");
+        evalOutputLength = Integer.parseInt(parameters.get("trecEvalOutputLength"));
+        numThreads = Integer.parseInt(parameters.getOrDefault("parallel:numThreads", "1"));
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("parallel:numThreads must be at least 1");
+        }
+        queryPartitions = Integer.parseInt(parameters.getOrDefault("parallel:queryPartitions", "1"));
+        if (queryPartitions < 1) {
+            throw new IllegalArgumentException("parallel:queryPartitions must be at least 1");
+        }
+        long cacheMB = Long.parseLong(parameters.getOrDefault("cache:memoryMB", "0"));
+        String cacheDir = parameters.getOrDefault("cache:dir", "");
+        if (cacheMB < 0) {
+            throw new IllegalArgumentException("cache:memoryMB must not be negative");
+        } else if ((cacheMB > 0) || !cacheDir.isEmpty()) {
+            resultCache = QueryResultCache.open(cacheMB << 20, cacheDir);
+        }
+        long termVectorCacheMB = Long.parseLong(parameters.getOrDefault("cache:termVectorMB", "0"));
+        if (termVectorCacheMB < 0) {
+            throw new IllegalArgumentException("cache:termVectorMB must not be negative");
+        }
+        if (termVectorCacheMB > 0) {
+            termVectorCache = TermVectorCache.open(termVectorCacheMB << 20);
+        }
+        // Score LTR test features with the trained model in this process,
+        // without writing the testing feature and score files
+        ltrInProcess = Boolean.parseBoolean(parameters.getOrDefault("ltr:inProcess", "false"));
+        if (getPruning(parameters).equals(QrySopSum.PRUNING_BMW)) {
+            Timer blockMaxTimer = new Timer();
+            blockMaxTimer.start();
+            Idx.openBlockMaxIndex(parameters.get("indexPath"));
+            blockMaxTimer.stop();
+            System.out.println("Time used for opening the block-max index: " + blockMaxTimer);
+        }
+
+        diversityInitialRankingFile = parameters.getOrDefault("diversity:initialRankingFile", "");
+        String diversity = parameters.getOrDefault("diversity", "false").toLowerCase();
+        if (diversity.equals("true")) {
+            diversityAlgorithm = parameters.get("diversity:algorithm").toLowerCase();
+        }
+
+        // Start the partition threads last, so that an invalid parameter
+        // doesn't leave them running
+        if (queryPartitions > 1) {
+            partitionPool = new ForkJoinPool(queryPartitions);
+        }
+    }
+
+    /**
+     * Stop the threads that evaluate query partitions.  The engine
+     * can't evaluate queries after it is closed.
+     */
+    @Override
+    public void close() {
+        if (partitionPool != null) {
+            partitionPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Allocate a retrieval model and initialize it using parameters.
+     *
+     * @param parameters The retrievalAlgorithm and model parameters.
+     * @return The retrieval model.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public static RetrievalModel createModel(Map<String, String> parameters) throws IOException {
+        String retrievalAlgorithm = parameters.get("retrievalAlgorithm").toLowerCase();
+        RetrievalModel model;
         if (retrievalAlgorithm.equals("unrankedboolean")) {
             model = new RetrievalModelUnrankedBoolean();
         } else if (retrievalAlgorithm.equals("rankedboolean")) {
@@ -35,7 +138,7 @@ public class SearchEngine {
             double b = Double.parseDouble(parameters.get("BM25:b"));
             double k1 = Double.parseDouble(parameters.get("BM25:k_1"));
             double k3 = Double.parseDouble(parameters.get("BM25:k_3"));
-            model = new BM25(b, k1, k3);
+            model = new BM25(b, k1, k3, getPruning(parameters));
         } else if (retrievalAlgorithm.equals("indri")) {
             double mu = Double.parseDouble(parameters.get("Indri:mu"));
             double lambda = Double.parseDouble(parameters.get("Indri:lambda"));
@@ -48,25 +151,38 @@ public class SearchEngine {
             double b = Double.parseDouble(parameters.get("BM25:b"));
             double k1 = Double.parseDouble(parameters.get("BM25:k_1"));
             double k3 = Double.parseDouble(parameters.get("BM25:k_3"));
-            BM25 bm25 = new BM25(b, k1, k3);
+            BM25 bm25 = new BM25(b, k1, k3, getPruning(parameters));
 
             model = new LTR(indri, bm25);
         } else {
             throw new IllegalArgumentException("Unknown retrieval model " + retrievalAlgorithm);
         }
 
-        // Read params
-        prf = parameters.getOrDefault("prf", "false"); // Pseudo Relevance Feedback (PRF)
-        expansionField = parameters.getOrDefault("prf:expansionField", "body");
-        expansionQryOutFile = parameters.getOrDefault("prf:expansionQueryFile", "");
-        initialRankingFile = parameters.getOrDefault("prf:initialRankingFile", "");
-        evalOutputLength = Integer.parseInt(parameters.get("trecEvalOutputLength"));
+        long invListCacheMB = Long.parseLong(parameters.getOrDefault("cache:invListMB", "0"));
+        if (invListCacheMB < 0) {
+            throw new IllegalArgumentException("cache:invListMB must not be negative");
+        }
+        model.setPostings(
+                Boolean.parseBoolean(parameters.getOrDefault("postings:streaming", "false")),
+                (invListCacheMB > 0) ? InvListCache.open(invListCacheMB << 20) : null);
 
-        diversityInitialRankingFile = parameters.getOrDefault("diversity:initialRankingFile", "");
-        String diversity = parameters.getOrDefault("diversity", "false").toLowerCase();
-        if (diversity.equals("true")) {
-            diversityAlgorithm = parameters.get("diversity:algorithm").toLowerCase();
+        return model;
+    }
+
+    /**
+     * Get the BM25:pruning algorithm of a parameter set.
+     *
+     * @param parameters The model parameters.
+     * @return One of the QrySopSum.PRUNING_ constants.
+     */
+    private static String getPruning(Map<String, String> parameters) {
+        String pruning = parameters.getOrDefault("BM25:pruning", QrySopSum.PRUNING_NONE).toLowerCase();
+        if (!pruning.equals(QrySopSum.PRUNING_NONE)
+                && !pruning.equals(QrySopSum.PRUNING_MAXSCORE)
+                && !pruning.equals(QrySopSum.PRUNING_BMW)) {
+            throw new IllegalArgumentException("Unknown BM25:pruning algorithm " + pruning);
         }
+        return pruning;
     }
 
     public Map<String, ScoreList> run() throws Exception {
@@ -171,11 +287,54 @@ public class SearchEngine {
                 isSVMRank,
                 false
         );
-        String testFeaturePath = parameters.get("ltr:testingFeatureVectorsFile");
-        writeLTRFeatures(testFeats, testFeaturePath);
 
         // Rerank
         System.out.println("Reranking using the trained model");
+        List<Double> rerankedScores;
+        if (ltrInProcess) {
+            rerankedScores = new ArrayList<>();
+            LTRRanker ranker = LTRRanker.load(ranklib, modelPath);
+            for (LTRFeatureVectorList feats : testFeats.values()) {
+                for (double score : ranker.score(feats)) rerankedScores.add(score);
+            }
+        } else {
+            rerankedScores = rerankExternally(testFeats, ranklib, modelPath);
+        }
+
+        int i = 0;
+        LinkedHashMap<String, ScoreList> finalRanking = new LinkedHashMap<>();
+        for (var entry : testFeats.entrySet()) {
+            int qid = entry.getKey();
+            ScoreList scoreList = new ScoreList();
+
+            LTRFeatureVectorList feats = entry.getValue();
+            for (int j = 0; j < feats.size(); ++j) {
+                double newScore = rerankedScores.get(i++);
+                scoreList.add(feats.getExternalDocid(j), newScore);
+            }
+
+            scoreList.sort();
+            finalRanking.put(String.valueOf(qid), scoreList);
+        }
+
+        return finalRanking;
+    }
+
+    /**
+     * Score the test features with the toolkit: write them to
+     * ltr:testingFeatureVectorsFile, run the toolkit, and read its
+     * scores from ltr:testingDocumentScores.
+     *
+     * @return The scores, in the order of the feature vectors.
+     */
+    private List<Double> rerankExternally(
+            Map<Integer, LTRFeatureVectorList> testFeats,
+            String ranklib,
+            String modelPath
+    ) throws Exception {
+        String testFeaturePath = parameters.get("ltr:testingFeatureVectorsFile");
+        writeLTRFeatures(testFeats, testFeaturePath);
+
         String testRerankedScorePath = parameters.get("ltr:testingDocumentScores");
         if (ranklib.equals("RankLib")) {
             ciir.umass.edu.eval.Evaluator.main(
@@ -185,7 +344,7 @@ public class SearchEngine {
                             "-score", testRerankedScorePath,
                     }
             );
-        } else if (isSVMRank) {
+        } else if (ranklib.equals("SVMRank")) {
             Utils.runExternalProcess(
                     "svm_rank_classify",
                     new String[]{
@@ -199,7 +358,7 @@ public class SearchEngine {
             assert false;
         }
 
-        // Read the reranked scores and build the final retrieval result
+        // Read the reranked scores
         List<Double> rerankedScores = new ArrayList<>();
         try (var reader = new BufferedReader(new FileReader(testRerankedScorePath))) {
             String line;
@@ -210,23 +369,7 @@ public class SearchEngine {
             }
         }
 
-        int i = 0;
-        LinkedHashMap<String, ScoreList> finalRanking = new LinkedHashMap<>();
-        for (var entry : testFeats.entrySet()) {
-            int qid = entry.getKey();
-            ScoreList scoreList = new ScoreList();
-
-            LTRFeatureVectorList feats = entry.getValue();
-            for (int j = 0; j < feats.size(); ++j) {
-                double newScore = rerankedScores.get(i++);
-                scoreList.add(feats.getExternalDocid(j), newScore);
-            }
-
-            scoreList.sort();
-            finalRanking.put(String.valueOf(qid), scoreList);
-        }
-
-        return finalRanking;
+        return rerankedScores;
     }
 
     public Map<String, ScoreList> runIndriPRF() throws Exception {
@@ -550,13 +693,22 @@ public class SearchEngine {
     ) throws Exception {
         BufferedReader input = null;
         Map<Integer, LTRFeatureVectorList> ret = new LinkedHashMap<>(); // PRESERVE INSERTION ORDER
+        Map<Integer, LTRFeatureKernel> kernels = new HashMap<>();
+        var bm25 = ((LTR) this.model).getBM25();
+        var indri = ((LTR) this.model).getIndri();
 
-        HashSet<Integer> disabledFeatIdx = new HashSet<>();
+        boolean[] enabled = new boolean[NUM_LTR_FEATURES];
+        Arrays.fill(enabled, true);
         for (String f : disableFeats.split(",")) {
             if (f.isEmpty()) {
-                disabledFeatIdx.addAll(Arrays.asList(16, 17, 18, 19)); // disable custom features by default
+                Arrays.fill(enabled, 16, 20, false); // disable custom features by default
             } else {
-                disabledFeatIdx.add(Integer.parseInt(f) - 1);
+                int featureId = Integer.parseInt(f);
+                if (featureId < 1 || featureId > NUM_LTR_FEATURES) {
+                    throw new IllegalArgumentException(
+                            "ltr:featureDisable: feature " + f + " isn't in 1.." + NUM_LTR_FEATURES);
+                }
+                enabled[featureId - 1] = false;
             }
         }
 
@@ -574,70 +726,133 @@ public class SearchEngine {
             String query = pair[1];
             String[] qryTerms = QryParser.tokenizeString(query);
 
-            var bm25 = ((LTR) this.model).getBM25();
-            var indri = ((LTR) this.model).getIndri();
             var docs = externalIDs.get(qid);
             if (docs == null) throw new RuntimeException("Cannot find external document IDs for query: " + qid);
             var qryRelevance = relevance.get(qid);
 
-            LTRFeatureVectorList feats = new LTRFeatureVectorList();
+            LTRFeatureVectorList feats = new LTRFeatureVectorList(enabled);
             for (String externalID : docs) {
                 int docid = Idx.getInternalDocid(externalID);
-
-                Map<Integer, Double> vec = new HashMap<>();
-                if (!disabledFeatIdx.contains(0)) vec.put(0, Idx.getDocSpamScore(docid));
-                if (!disabledFeatIdx.contains(1)) vec.put(1, Idx.getDocURLDepth(docid));
-                if (!disabledFeatIdx.contains(2)) vec.put(2, Idx.getDocWikipediaScore(docid));
-                if (!disabledFeatIdx.contains(3)) vec.put(3, Idx.getDocPageRank(docid));
-
-                TermVector termVectorBody = new TermVector(docid, "body");
-                double overlap = Utils.getTermOverlap(termVectorBody, qryTerms);
-                if (!disabledFeatIdx.contains(4)) vec.put(4, bm25.getScore(qryTerms, termVectorBody, "body"));
-                if (!disabledFeatIdx.contains(5)) vec.put(5, indri.getScore(qryTerms, termVectorBody, "body"));
-                if (!disabledFeatIdx.contains(6)) vec.put(6, overlap);
-
-                TermVector termVectorTitle = new TermVector(docid, "title");
-                overlap = Utils.getTermOverlap(termVectorTitle, qryTerms);
-                if (!disabledFeatIdx.contains(7)) vec.put(7, bm25.getScore(qryTerms, termVectorTitle, "title"));
-                if (!disabledFeatIdx.contains(8)) vec.put(8, indri.getScore(qryTerms, termVectorTitle, "title"));
-                if (!disabledFeatIdx.contains(9)) vec.put(9, overlap);
-
-                TermVector termVectorUrl = new TermVector(docid, "url");
-                overlap = Utils.getTermOverlap(termVectorUrl, qryTerms);
-                if (!disabledFeatIdx.contains(10)) vec.put(10, bm25.getScore(qryTerms, termVectorUrl, "url"));
-                if (!disabledFeatIdx.contains(11)) vec.put(11, indri.getScore(qryTerms, termVectorUrl, "url"));
-                if (!disabledFeatIdx.contains(12)) vec.put(12, overlap);
-
-                TermVector termVectorInlink = new TermVector(docid, "inlink");
-                overlap = Utils.getTermOverlap(termVectorInlink, qryTerms);
-                if (!disabledFeatIdx.contains(13)) vec.put(13, bm25.getScore(qryTerms, termVectorInlink, "inlink"));
-                if (!disabledFeatIdx.contains(14)) vec.put(14, indri.getScore(qryTerms, termVectorInlink, "inlink"));
-                if (!disabledFeatIdx.contains(15)) vec.put(15, overlap);
-
-                // === Custom features ===
-                // body field total length
-                if (!disabledFeatIdx.contains(16)) vec.put(16, (double) indri.fieldTotalLengths.get("body"));
-                // query length
-                if (!disabledFeatIdx.contains(17)) vec.put(17, (double) qryTerms.length);
-                // unique terms in document body
-                if (!disabledFeatIdx.contains(18)) vec.put(18, (double) termVectorBody.stemsLength());
-                // number of inlinks
-                if (!disabledFeatIdx.contains(19)) vec.put(19, (double) termVectorInlink.positionsLength());
-
                 int rel = 0;
                 if (qryRelevance != null) rel = qryRelevance.getOrDefault(externalID, 0);
-                feats.add(qid, docid, externalID, vec, rel);
+                feats.add(qid, docid, externalID, rel);
             }
+            ret.put(qid, feats);
+            kernels.put(qid, new LTRFeatureKernel(qryTerms, bm25, indri, "body", "title", "url", "inlink"));
+        }
+        input.close();
+
+        extractLTRFeatures(ret, kernels, enabled);
 
+        for (LTRFeatureVectorList feats : ret.values()) {
             if (sort) feats.sort();
             if (normalize) feats.normalize();
-            ret.put(qid, feats);
         }
-
-        input.close();
         return ret;
     }
 
+    /**
+     * Compute the features of every document of every query.  With
+     * parallel:numThreads > 1, documents are processed concurrently;
+     * each writes only its own row of its query's list, so the features
+     * are the same as when they are computed serially.
+     *
+     * @param feats      qid -> the documents, with their features unset.
+     * @param kernels    qid -> the query's feature kernel.
+     * @param enabled    Whether each feature is computed.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    private void extractLTRFeatures(
+            Map<Integer, LTRFeatureVectorList> feats,
+            Map<Integer, LTRFeatureKernel> kernels,
+            boolean[] enabled
+    ) throws IOException {
+        if (numThreads == 1) {
+            for (var entry : feats.entrySet()) {
+                LTRFeatureKernel kernel = kernels.get(entry.getKey());
+                LTRFeatureVectorList list = entry.getValue();
+                for (int row = 0; row < list.size(); ++row) {
+                    setLTRFeatures(list, row, kernel, enabled);
+                }
+            }
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (var entry : feats.entrySet()) {
+                LTRFeatureKernel kernel = kernels.get(entry.getKey());
+                LTRFeatureVectorList list = entry.getValue();
+                for (int i = 0; i < list.size(); ++i) {
+                    int row = i;
+                    futures.add(pool.submit(() -> {
+                        setLTRFeatures(list, row, kernel, enabled);
+                        return null;
+                    }));
+                }
+            }
+
+            for (Future<Void> future : futures) {
+                getResult(future);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Compute the features of one document.
+     *
+     * @param feats   The query's documents.
+     * @param row     The document's index in feats.
+     * @param kernel  The query's feature kernel.
+     * @param enabled Whether each feature is computed.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    private void setLTRFeatures(
+            LTRFeatureVectorList feats,
+            int row,
+            LTRFeatureKernel kernel,
+            boolean[] enabled
+    ) throws IOException {
+        var indri = ((LTR) this.model).getIndri();
+        int docid = feats.getDocid(row);
+        double[] scores = new double[3];
+
+        if (enabled[0]) feats.set(row, 0, Idx.getDocSpamScore(docid));
+        if (enabled[1]) feats.set(row, 1, Idx.getDocURLDepth(docid));
+        if (enabled[2]) feats.set(row, 2, Idx.getDocWikipediaScore(docid));
+        if (enabled[3]) feats.set(row, 3, Idx.getDocPageRank(docid));
+
+        // BM25, Indri, and term overlap of the body, title, url, and inlink fields
+        String[] fields = {"body", "title", "url", "inlink"};
+        TermVector[] termVectors = new TermVector[fields.length];
+        for (int f = 0; f < fields.length; f++) {
+            termVectors[f] = getTermVector(docid, fields[f]);
+
+            int feat = 4 + 3 * f;
+            if (!enabled[feat] && !enabled[feat + 1] && !enabled[feat + 2]) continue;
+
+            kernel.score(termVectors[f], scores);
+            feats.set(row, feat, scores[LTRFeatureKernel.BM25_SCORE]);
+            feats.set(row, feat + 1, scores[LTRFeatureKernel.INDRI_SCORE]);
+            feats.set(row, feat + 2, scores[LTRFeatureKernel.TERM_OVERLAP]);
+        }
+        TermVector termVectorBody = termVectors[0];
+        TermVector termVectorInlink = termVectors[3];
+
+        // === Custom features ===
+        // body field total length
+        if (enabled[16]) feats.set(row, 16, (double) indri.fieldTotalLengths.get("body"));
+        // query length
+        if (enabled[17]) feats.set(row, 17, (double) kernel.getStems().length);
+        // unique terms in document body
+        if (enabled[18]) feats.set(row, 18, (double) termVectorBody.stemsLength());
+        // number of inlinks
+        if (enabled[19]) feats.set(row, 19, (double) termVectorInlink.positionsLength());
+    }
+
     private void writeLTRFeatures(Map<Integer, LTRFeatureVectorList> feats, String outFile) throws IOException {
         FileWriter fileWriter = new FileWriter(outFile);
         BufferedWriter writer = new BufferedWriter(fileWriter);
@@ -646,28 +861,7 @@ public class SearchEngine {
             int qid = entry.getKey();
             LTRFeatureVectorList featList = entry.getValue();
 
-            for (int i = 0; i < featList.size(); ++i) {
-                writer.write(featList.getRelevance(i) + " qid:" + qid + " ");
-                var feat = featList.getDocidFeats(i);
-
-                int prev = 0;
-                for (var e : feat.entrySet()) {
-                    int idx = e.getKey();
-
-                    // fill in inconsecutive features with 0
-                    for (int j = prev + 1; j < idx; ++j) {
-                        writer.write((j + 1) + ":0 ");
-                    }
-
-                    double val = e.getValue();
-                    if (Double.isNaN(val)) val = 0;
-                    writer.write((idx + 1) + ":" + val + " ");
-
-                    prev = idx;
-                }
-
-                writer.write("# " + featList.getExternalDocid(i) + "\n");
-            }
+            featList.write(writer, qid);
         }
 
         writer.close();
@@ -675,26 +869,319 @@ public class SearchEngine {
     }
 
     private Qry buildQryObject(String qString) throws IOException {
+        return buildQryObject(qString, this.model);
+    }
+
+    private Qry buildQryObject(String qString, RetrievalModel model) throws IOException {
         String defaultOp = model.defaultQrySopName();
         qString = defaultOp + "(" + qString + ")";
         return QryParser.getQuery(qString);
     }
 
-    private ScoreList evaluateQry(RetrievalModel m, Qry q) throws IOException {
-        ScoreList results = new ScoreList();
+    /**
+     * Evaluate a query and keep its k best documents.
+     *
+     * @param m The retrieval model.
+     * @param q The query.
+     * @param k The number of documents to keep.
+     * @return The k best documents, sorted.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    private ScoreList evaluateQry(RetrievalModel m, Qry q, int k) throws IOException {
+        TopKCollector results = new TopKCollector(k);
 
         if (q.args.size() > 0) {        // Ignore empty queries
             q.initialize(m);
+            collectTopK(m, q, results);
+        }
+
+        return results.toScoreList();
+    }
+
+    /**
+     * Evaluate a query file for several retrieval models of the same
+     * kind at once, e.g., a grid of BM25 or Indri parameters.  Each
+     * query is parsed and initialized (its inverted lists are read)
+     * once, and its documents are visited once; each document is scored
+     * by the compiled scorers of every model, and kept in one top-k
+     * collector per model.  The models must match the same documents,
+     * so they must be of one class; they may differ only in parameters.
+     * The results are the same as those of a processQueryFile call per
+     * model, without pruning or partitions.
+     *
+     * @param queryFilePath Path to the query file.
+     * @param models        The retrieval models.
+     * @param k             The number of documents to keep for each model.
+     * @return qid -> results, for each model, in the order of the query file.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public List<Map<String, ScoreList>> processQueryFileSweep(
+            String queryFilePath,
+            RetrievalModel[] models,
+            int[] k
+    ) throws IOException {
+        for (RetrievalModel m : models) {
+            if (m.getClass() != models[0].getClass()) {
+                throw new IllegalArgumentException("A sweep's retrieval models must be of one class");
+            }
+        }
+
+        List<Map<String, ScoreList>> ret = new ArrayList<>();
+        for (int c = 0; c < models.length; c++) {
+            ret.add(new LinkedHashMap<>()); // PRESERVE INSERTION ORDER
+        }
+
+        try (BufferedReader input = new BufferedReader(new FileReader(queryFilePath))) {
+            String qLine = null;
+            while ((qLine = input.readLine()) != null) {
+                printMemoryUsage(false);
+                System.out.println("Query " + qLine);
+                String[] pair = parseQueryLine(qLine);
+
+                Timer timer = new Timer();
+                timer.start();
+
+                Qry q = buildQryObject(pair[1], models[0]);
+                System.out.println("    --> " + q);
+                if (q != null) {
+                    ScoreList[] results = evaluateQrySweep(models, q, k);
+                    for (int c = 0; c < models.length; c++) {
+                        ret.get(c).put(pair[0], results[c]);
+                    }
+                }
+
+                timer.stop();
+                System.out.println("Time used for processing this query: " + timer);
+            }
+        }
+
+        return ret;
+    }
 
+    /**
+     * Evaluate a query for several retrieval models of one class in a
+     * single pass over its documents.
+     *
+     * @param models The retrieval models.
+     * @param q      The query.
+     * @param k      The number of documents to keep for each model.
+     * @return The k best documents of each model, sorted.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    private static ScoreList[] evaluateQrySweep(RetrievalModel[] models, Qry q, int[] k) throws IOException {
+        TopKCollector[] results = new TopKCollector[models.length];
+        for (int c = 0; c < models.length; c++) {
+            results[c] = new TopKCollector(k[c]);
+        }
+
+        if (q.args.size() > 0) {        // Ignore empty queries
+            q.initialize(models[0]);
+
+            //  Each scorer keeps its model's document-independent
+            //  statistics, so the scorers don't interfere.
+
+            QryScorer[] scorers = new QryScorer[models.length];
+            for (int c = 0; c < models.length; c++) {
+                scorers[c] = ((QrySop) q).getScorer(models[c]);
+            }
+
+            while (q.docIteratorHasMatch(models[0])) {
+                int docid = q.docIteratorGetMatch();
+                for (int c = 0; c < models.length; c++) {
+                    results[c].add(docid, scorers[c].score());
+                }
+                q.docIteratorAdvancePast(docid);
+            }
+        }
+
+        ScoreList[] lists = new ScoreList[models.length];
+        for (int c = 0; c < models.length; c++) {
+            lists[c] = results[c].toScoreList();
+        }
+        return lists;
+    }
+
+    /**
+     * Evaluate a query and keep its k best documents, using the result
+     * cache if there is one.
+     *
+     * @param m     The retrieval model.
+     * @param q     The query.
+     * @param query The query string, if the query may be evaluated on
+     *              docid ranges in parallel, or null.
+     * @param k     The number of documents to keep.
+     * @return The k best documents, sorted.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    private ScoreList evaluateQryCached(RetrievalModel m, Qry q, String query, int k) throws IOException {
+        String key = null;
+        if (resultCache != null) {
+            key = QueryResultCache.key(m, q);
+            ScoreList cached = resultCache.get(key, k);
+            if (cached != null) return cached;
+        }
+
+        ScoreList results;
+        if ((query != null) && (queryPartitions > 1)) {
+            results = evaluateQryPartitioned(m, q, query, k);
+        } else {
+            results = evaluateQry(m, q, k);
+        }
+
+        if (key != null) resultCache.put(key, k, results);
+        return results;
+    }
+
+    /**
+     * Iterate over the documents of an initialized query, and add them
+     * to a top-k collector.
+     *
+     * @param m       The retrieval model.
+     * @param q       The query.
+     * @param results The collector of the top k documents.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    private static void collectTopK(RetrievalModel m, Qry q, TopKCollector results) throws IOException {
+        if ((q instanceof QrySopSum) && ((QrySopSum) q).canPrune(m)) {
+            ((QrySopSum) q).evaluateTopK(m, results);
+        } else {
+            QryScorer scorer = ((QrySop) q).getScorer(m);
             while (q.docIteratorHasMatch(m)) {
                 int docid = q.docIteratorGetMatch();
-                double score = ((QrySop) q).getScore(m);
+                double score = scorer.score();
                 results.add(docid, score);
                 q.docIteratorAdvancePast(docid);
             }
         }
+    }
 
-        return results;
+    /**
+     * Evaluate a query on queryPartitions docid ranges of the index in
+     * parallel, and merge their k best documents.
+     * <p>
+     * Each range gets its own copy of the query tree, whose TERM
+     * operators only read postings in the range.  The trees are
+     * initialized in parallel.  Then each inverted list operator gets
+     * the df and ctf of the whole index (the sum over the ranges), so
+     * that documents get the same scores as with evaluateQry, and the
+     * ranges are scored in parallel.
+     * </p>
+     *
+     * @param m     The retrieval model.
+     * @param q     The parsed query, used for the first range.
+     * @param query The query string, parsed again for the other ranges.
+     * @param k     The number of documents to keep.
+     * @return The k best documents, sorted.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    private ScoreList evaluateQryPartitioned(RetrievalModel m, Qry q, String query, int k) throws IOException {
+        if (q.args.size() == 0) return new ScoreList();     // Ignore empty queries
+
+        int n = queryPartitions;
+        int maxDoc = Idx.INDEXREADER.maxDoc();
+        Qry[] trees = new Qry[n];
+        List<List<QryIop>> iops = new ArrayList<>();
+
+        for (int p = 0; p < n; p++) {
+            trees[p] = (p == 0) ? q : buildQryObject(query, m);
+
+            List<QryIop> nodes = new ArrayList<>();
+            collectQryIops(trees[p], nodes);
+            for (QryIop node : nodes) {
+                if (node instanceof QryIopTerm) {
+                    ((QryIopTerm) node).setDocidRange((int) ((long) maxDoc * p / n), (int) ((long) maxDoc * (p + 1) / n));
+                }
+            }
+            iops.add(nodes);
+        }
+
+        runPartitions(p -> trees[p].initialize(m));
+
+        //  TERM operators know the statistics of the whole index.  Those
+        //  of other inverted list operators are added up over the ranges.
+
+        for (int j = 0; j < iops.get(0).size(); j++) {
+            if (iops.get(0).get(j) instanceof QryIopTerm) continue;
+
+            long df = 0, ctf = 0;
+            for (int p = 0; p < n; p++) {
+                df += iops.get(p).get(j).getDf();
+                ctf += iops.get(p).get(j).getCtf();
+            }
+            for (int p = 0; p < n; p++) {
+                iops.get(p).get(j).setIndexStatistics((int) df, (int) ctf);
+            }
+        }
+        for (Qry tree : trees) {
+            prepareScores(tree, m);
+        }
+
+        TopKCollector[] partialResults = new TopKCollector[n];
+        runPartitions(p -> {
+            partialResults[p] = new TopKCollector(k);
+            collectTopK(m, trees[p], partialResults[p]);
+        });
+
+        TopKCollector results = new TopKCollector(k);
+        for (TopKCollector partial : partialResults) {
+            ScoreList r = partial.toScoreList();
+            for (int i = 0; i < r.size(); i++) {
+                results.add(r.getDocid(i), r.getDocidScore(i));
+            }
+        }
+
+        return results.toScoreList();
+    }
+
+    /**
+     * A task that evaluateQryPartitioned runs for each docid range.
+     */
+    private interface PartitionTask {
+        void run(int partition) throws IOException;
+    }
+
+    /**
+     * Run a task for each docid range on the partition pool, and wait
+     * for all of them.
+     */
+    private void runPartitions(PartitionTask task) throws IOException {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int p = 0; p < queryPartitions; p++) {
+            int partition = p;
+            futures.add(partitionPool.submit(() -> {
+                task.run(partition);
+                return null;
+            }));
+        }
+
+        for (Future<Void> future : futures) {
+            getResult(future);
+        }
+    }
+
+    /**
+     * Add the inverted list operators of a query tree to a list, in
+     * pre-order, so that the nodes of copies of a tree line up.
+     */
+    private static void collectQryIops(Qry q, List<QryIop> nodes) {
+        if (q instanceof QryIop) nodes.add((QryIop) q);
+
+        for (Qry arg : q.args) {
+            collectQryIops(arg, nodes);
+        }
+    }
+
+    /**
+     * Recompute the document-independent parts of the scores of the
+     * SCORE operators of a query tree, after the statistics of their
+     * arguments changed.
+     */
+    private static void prepareScores(Qry q, RetrievalModel m) throws IOException {
+        if (q instanceof QrySopScore) ((QrySopScore) q).prepare(m);
+
+        for (Qry arg : q.args) {
+            prepareScores(arg, m);
+        }
     }
 
     /**
@@ -704,6 +1191,8 @@ public class SearchEngine {
      * @throws IOException Error accessing the Lucene index.
      */
     public Map<String, ScoreList> processQueryFile(String queryFilePath) throws IOException {
+        if (numThreads > 1) return processQueryFileParallel(queryFilePath);
+
         BufferedReader input = null;
         Map<String, ScoreList> ret = new LinkedHashMap<>(); // PRESERVE INSERTION ORDER
 
@@ -711,48 +1200,145 @@ public class SearchEngine {
             input = new BufferedReader(new FileReader(queryFilePath));
 
             // Each pass of the loop processes one query.
-            Timer timer = new Timer();
             String qLine = null;
             while ((qLine = input.readLine()) != null) {
                 printMemoryUsage(false);
                 System.out.println("Query " + qLine);
-                String[] pair = qLine.split(":");
+                String[] pair = parseQueryLine(qLine);
 
-                if (pair.length != 2) {
-                    throw new IllegalArgumentException("Syntax error:  Each line must contain one ':'.");
+                ScoreList results = processQuery(pair[1], this.model, evalOutputLength, System.out);
+                if (results != null) {
+                    ret.put(pair[0], results);
                 }
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        } finally {
+            input.close();
+        }
 
-                String qid = pair[0].strip();
-                String query = pair[1];
+        return ret;
+    }
 
-                timer.start(); // <------
+    /**
+     * Process a query file with numThreads worker threads.  Queries are
+     * evaluated concurrently (each has its own query tree, and the index
+     * is only read), but results and log messages are collected in the
+     * order of the query file, so the output is the same as
+     * processQueryFile's.
+     */
+    private Map<String, ScoreList> processQueryFileParallel(String queryFilePath) throws IOException {
+        Map<String, ScoreList> ret = new LinkedHashMap<>(); // PRESERVE INSERTION ORDER
+        List<String> qLines = new ArrayList<>();
 
-                Qry q = buildQryObject(query);
-                System.out.println("    --> " + q);
+        try (BufferedReader input = new BufferedReader(new FileReader(queryFilePath))) {
+            String qLine = null;
+            while ((qLine = input.readLine()) != null) {
+                parseQueryLine(qLine);
+                qLines.add(qLine);
+            }
+        }
 
-                ScoreList results = null;
-                if (q != null) results = evaluateQry(this.model, q);
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<ScoreList>> futures = new ArrayList<>();
+            List<ByteArrayOutputStream> logs = new ArrayList<>();
+
+            for (String qLine : qLines) {
+                String query = parseQueryLine(qLine)[1];
+                ByteArrayOutputStream log = new ByteArrayOutputStream();
+                logs.add(log);
+                futures.add(pool.submit(() -> {
+                    try (PrintStream out = new PrintStream(log)) {
+                        return processQuery(query, this.model, evalOutputLength, out);
+                    }
+                }));
+            }
 
-                timer.stop(); // <------
-                System.out.println("Time used for processing this query: " + timer);
+            for (int i = 0; i < qLines.size(); ++i) {
+                printMemoryUsage(false);
+                System.out.println("Query " + qLines.get(i));
 
+                ScoreList results = getResult(futures.get(i));
+                System.out.print(logs.get(i));
                 if (results != null) {
-                    results.sort();
-                    results.truncate(evalOutputLength);
-                    ret.put(qid, results);
+                    ret.put(parseQueryLine(qLines.get(i))[0], results);
                 }
             }
         } catch (IOException ex) {
             ex.printStackTrace();
         } finally {
-            input.close();
+            pool.shutdownNow();
         }
 
         return ret;
     }
 
     /**
-     * Process a query file using PRF
+     * Wait for a query evaluated by a worker thread, and rethrow its
+     * exception, if any, in the caller.
+     */
+    private static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a query", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Split a line of a query file into its qid and query.
+     */
+    static String[] parseQueryLine(String qLine) {
+        String[] pair = qLine.split(":");
+
+        if (pair.length != 2) {
+            throw new IllegalArgumentException("Syntax error:  Each line must contain one ':'.");
+        }
+
+        return new String[]{pair[0].strip(), pair[1]};
+    }
+
+    /**
+     * Parse and evaluate a query.
+     *
+     * @param query The query string.
+     * @param m     The retrieval model.
+     * @param k     The number of documents to keep.
+     * @param out   Where to print the parsed query and timing.
+     * @return The query's top k documents, sorted, or null if the query
+     * can't be parsed into a query tree.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    ScoreList processQuery(String query, RetrievalModel m, int k, PrintStream out) throws IOException {
+        Timer timer = new Timer();
+        timer.start(); // <------
+
+        Qry q = buildQryObject(query, m);
+        out.println("    --> " + q);
+
+        ScoreList results = null;
+        if (q != null) {
+            results = evaluateQryCached(m, q, query, k); // sorted and truncated
+        }
+
+        timer.stop(); // <------
+        out.println("Time used for processing this query: " + timer);
+        return results;
+    }
+
+    /**
+     * Process a query file using PRF.  With parallel:numThreads > 1,
+     * queries are expanded and evaluated concurrently, but results, log
+     * messages, and expansion queries are collected in the order of the
+     * query file, so the output is the same as the serial run's.
      */
     public Map<String, ScoreList> processQueryFile(
             String queryFilePath,
@@ -772,77 +1358,66 @@ public class SearchEngine {
             expansionQryWriter = new BufferedWriter(expansionQryFileWriter);
         }
 
+        ExecutorService pool = (numThreads > 1) ? Executors.newFixedThreadPool(numThreads) : null;
         try {
             input = new BufferedReader(new FileReader(queryFilePath));
 
-            // Each pass of the loop processes one query.
-            Timer timer = new Timer();
+            List<String> qLines = new ArrayList<>();
             String qLine = null;
             while ((qLine = input.readLine()) != null) {
-                printMemoryUsage(false);
-                System.out.println("Query " + qLine);
-                String[] pair = qLine.split(":");
+                parseQueryLine(qLine);
+                qLines.add(qLine);
+            }
 
-                if (pair.length != 2) {
-                    throw new IllegalArgumentException("Syntax error:  Each line must contain one ':'.");
+            List<Future<ScoreList>> futures = new ArrayList<>();
+            List<ByteArrayOutputStream> logs = new ArrayList<>();
+            List<StringBuilder> expansionQrys = new ArrayList<>();
+            if (pool != null) {
+                for (String line : qLines) {
+                    String[] pair = parseQueryLine(line);
+                    ByteArrayOutputStream log = new ByteArrayOutputStream();
+                    StringBuilder expansionQry = new StringBuilder();
+                    logs.add(log);
+                    expansionQrys.add(expansionQry);
+                    futures.add(pool.submit(() -> {
+                        try (PrintStream out = new PrintStream(log)) {
+                            return processPrfQuery(pair[0], pair[1], prf.get(pair[0]), expansionField,
+                                    numTerms, origWeight, expansionQry, out);
+                        }
+                    }));
                 }
+            }
 
-                String qid = pair[0].strip();
-                String query = pair[1];
-
-                // ===================== Build extended query =====================
-                Qry origQry = buildQryObject(query);
-                System.out.println("    --> Original query: " + origQry);
-
-                IWeightedSop learnedQry = (IWeightedSop) QryParser.createOperator("#wand");
-                String expansionQryOutString = qid + ": #wand ( ";
-                int nt = 0;
-                List<Map.Entry<String, Double>> qryPrf = prf.get(qid);
-                for (Map.Entry<String, Double> termScore : qryPrf) {
-                    if (nt >= numTerms) break;
-
-                    String term = termScore.getKey();
-                    if (!Utils.isAsciiString(term) || term.contains(".") || term.contains(",")) {
-                        continue;
-                    }
-
-                    // not entirely accurate but good enough
-                    double termWeight = Math.round(termScore.getValue() * 10000.0) / 10000.0;
-
-                    // System.out.println(term + ": " + termWeight);
-                    learnedQry.appendWeightedArg(new QryIopTerm(term, expansionField), termWeight);
-                    expansionQryOutString += String.format("%.4f", termWeight) + " " +
-                            (expansionField.equals("body") ? term : term + "." + expansionField)
-                            + " ";
-
-                    ++nt;
+            // Each pass of the loop processes one query.
+            for (int i = 0; i < qLines.size(); ++i) {
+                printMemoryUsage(false);
+                System.out.println("Query " + qLines.get(i));
+                String[] pair = parseQueryLine(qLines.get(i));
+
+                ScoreList results;
+                StringBuilder expansionQry;
+                if (pool != null) {
+                    results = getResult(futures.get(i));
+                    expansionQry = expansionQrys.get(i);
+                    System.out.print(logs.get(i));
+                } else {
+                    expansionQry = new StringBuilder();
+                    results = processPrfQuery(pair[0], pair[1], prf.get(pair[0]), expansionField,
+                            numTerms, origWeight, expansionQry, System.out);
                 }
-                expansionQryOutString += " ) ";
-                System.out.println("    --> Learned query: " + learnedQry);
-
-                IWeightedSop expandedQry = (IWeightedSop) QryParser.createOperator("#wand");
-                expandedQry.appendWeightedArg(origQry, origWeight);
-                expandedQry.appendWeightedArg((Qry) learnedQry, 1 - origWeight);
-                System.out.println("    --> Expanded query: " + expandedQry);
-                // ================================================================
 
                 // Write learned query to the specified file
-                if (expansionQryWriter != null) expansionQryWriter.write(expansionQryOutString + "\n");
-
-                timer.start(); // <------
-                ScoreList results = evaluateQry(this.model, (Qry) expandedQry);
-                timer.stop(); // <------
-                System.out.println("Time used for processing this query: " + timer);
+                if (expansionQryWriter != null) expansionQryWriter.write(expansionQry + "\n");
 
                 if (results != null) {
-                    results.sort();
-                    ret.put(qid, results);
+                    ret.put(pair[0], results);
                 }
             }
         } catch (IOException ex) {
             ex.printStackTrace();
         } finally {
-            input.close();
+            if (pool != null) pool.shutdownNow();
+            if (input != null) input.close();
             if (expansionQryWriter != null) expansionQryWriter.close();
             if (expansionQryFileWriter != null) expansionQryFileWriter.close();
         }
@@ -850,6 +1425,74 @@ public class SearchEngine {
         return ret;
     }
 
+    /**
+     * Expand a query with its PRF terms, and evaluate the expanded query.
+     *
+     * @param qid            The query's id.
+     * @param query          The query string.
+     * @param qryPrf         The query's PRF terms, sorted by score.
+     * @param expansionField The field of the expansion terms.
+     * @param numTerms       The number of expansion terms.
+     * @param origWeight     The weight of the original query.
+     * @param expansionQry   Where to append the expansion query, in the
+     *                       format of expansionQryOutFile.
+     * @param out            Where to print the queries and timing.
+     * @return The expanded query's top documents, sorted.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    private ScoreList processPrfQuery(
+            String qid,
+            String query,
+            List<Map.Entry<String, Double>> qryPrf,
+            String expansionField,
+            int numTerms,
+            double origWeight,
+            StringBuilder expansionQry,
+            PrintStream out
+    ) throws IOException {
+        // ===================== Build extended query =====================
+        Qry origQry = buildQryObject(query);
+        out.println("    --> Original query: " + origQry);
+
+        IWeightedSop learnedQry = (IWeightedSop) QryParser.createOperator("#wand");
+        expansionQry.append(qid).append(": #wand ( ");
+        int nt = 0;
+        for (Map.Entry<String, Double> termScore : qryPrf) {
+            if (nt >= numTerms) break;
+
+            String term = termScore.getKey();
+            if (!Utils.isAsciiString(term) || term.contains(".") || term.contains(",")) {
+                continue;
+            }
+
+            // not entirely accurate but good enough
+            double termWeight = Math.round(termScore.getValue() * 10000.0) / 10000.0;
+
+            // System.out.println(term + ": " + termWeight);
+            learnedQry.appendWeightedArg(new QryIopTerm(term, expansionField), termWeight);
+            expansionQry.append(String.format("%.4f", termWeight)).append(" ")
+                    .append(expansionField.equals("body") ? term : term + "." + expansionField)
+                    .append(" ");
+
+            ++nt;
+        }
+        expansionQry.append(" ) ");
+        out.println("    --> Learned query: " + learnedQry);
+
+        IWeightedSop expandedQry = (IWeightedSop) QryParser.createOperator("#wand");
+        expandedQry.appendWeightedArg(origQry, origWeight);
+        expandedQry.appendWeightedArg((Qry) learnedQry, 1 - origWeight);
+        out.println("    --> Expanded query: " + expandedQry);
+        // ================================================================
+
+        Timer timer = new Timer();
+        timer.start(); // <------
+        ScoreList results = evaluateQryCached(this.model, (Qry) expandedQry, null, evalOutputLength);
+        timer.stop(); // <------
+        out.println("Time used for processing this query: " + timer);
+        return results;
+    }
+
     /**
      * Initialize PRF scores from existing ranking results
      *
@@ -870,67 +1513,27 @@ public class SearchEngine {
         long L = ((Indri) model).fieldTotalLengths.get(expansionField);
 
         // for each query
-        for (Map.Entry<String, ScoreList> e : initialRanking.entrySet()) {
-            int docs = 0;
-            double prevDocIncre = 0.0; // https://boston.lti.cs.cmu.edu/classes/11-642/HW/HW3/FAQ.html
-            String qid = e.getKey();
-            ScoreList scoreList = e.getValue();
-            Map<String, Double> termScores = new HashMap<>();
-
-            // for each doc of this query
-            for (int r = 0; r < scoreList.size(); ++r) {
-                if (docs >= numDocs) continue;
-
-                TermVector tv = new TermVector(scoreList.getDocid(r), expansionField);
-                double docLen = tv.positionsLength();
-
-                // terms in this document
-                for (int i = 1; i < tv.stemsLength(); ++i) {
-                    assert docLen > 0;
-
-                    double ctf = tv.totalStemFreq(i);
-                    double p_td = (
-                            tv.stemFreq(i) + mu * ctf / L
-                    ) / (docLen + mu);
-                    double idf = Math.log(L) - Math.log(ctf);
-                    double score = p_td * idf * scoreList.getDocidScore(r);
-
-                    String stem = tv.stemString(i);
-                    if (termScores.containsKey(stem)) {
-                        termScores.put(stem, termScores.get(stem) + score);
-                    } else { // first encounter of this term
-                        termScores.put(stem, prevDocIncre * ctf / L * idf + score);
-                    }
+        if (numThreads == 1) {
+            for (Map.Entry<String, ScoreList> e : initialRanking.entrySet()) {
+                ret.put(e.getKey(), getPrfTermScores(e.getValue(), expansionField, numDocs, mu, L));
+            }
+        } else {
+            // queries are independent; each task has its own PrfTermScorer
+            ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+            try {
+                Map<String, Future<List<Map.Entry<String, Double>>>> futures = new LinkedHashMap<>();
+                for (Map.Entry<String, ScoreList> e : initialRanking.entrySet()) {
+                    ScoreList scoreList = e.getValue();
+                    futures.put(e.getKey(), pool.submit(
+                            () -> getPrfTermScores(scoreList, expansionField, numDocs, mu, L)));
                 }
 
-                // terms that are missing in this document but present in other docs
-                for (String stem : termScores.keySet()) {
-                    if (tv.indexOfStem(stem) != -1) continue;
-
-                    double ctf = Idx.getTotalTermFreq(expansionField, stem);
-                    double idf = Math.log(L) - Math.log(ctf);
-                    double p_td = (
-                            0.0 + mu * ctf / L
-                    ) / (docLen + mu);
-                    if (Double.isNaN(p_td)) p_td = 0.0; // essentially skip this doc when docLen and mu are both 0
-                    termScores.put(stem, termScores.get(stem) + p_td * idf * scoreList.getDocidScore(r));
+                for (var f : futures.entrySet()) {
+                    ret.put(f.getKey(), getResult(f.getValue()));
                 }
-
-                if (docLen + mu != 0) // essentially skip this doc when docLen and mu are both 0
-                    prevDocIncre += mu / (docLen + mu) * scoreList.getDocidScore(r);
-                ++docs;
+            } finally {
+                pool.shutdownNow();
             }
-
-            // finish loading this query and reset
-            // sort by scores descendingly
-            List<Map.Entry<String, Double>> sorted = new ArrayList<>(termScores.entrySet());
-            // sort by score, if score is the same sort by term string
-            sorted.sort(
-                    (e1, e2) -> e2.getValue().equals(e1.getValue()) ?
-                            e1.getKey().compareTo(e2.getKey())
-                            : e2.getValue().compareTo(e1.getValue())
-            );
-            ret.put(qid, sorted);
         }
 
         timer.stop(); // <------
@@ -938,6 +1541,48 @@ public class SearchEngine {
         return ret;
     }
 
+    /**
+     * Score the expansion terms of one query.
+     *
+     * @param scoreList The query's initial ranking.
+     * @param numDocs   The number of documents to use for query expansion.
+     * @param L         The total length of expansionField.
+     * @return The terms and their scores, sorted by score descendingly,
+     * and by term if the scores are the same.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    private List<Map.Entry<String, Double>> getPrfTermScores(
+            ScoreList scoreList,
+            String expansionField,
+            int numDocs,
+            double mu,
+            long L
+    ) throws IOException {
+        PrfTermScorer termScores = new PrfTermScorer(mu, L);
+
+        // for each doc of this query
+        for (int r = 0; r < scoreList.size() && termScores.numDocs() < numDocs; ++r) {
+            TermVector tv = getTermVector(scoreList.getDocid(r), expansionField);
+            termScores.addDocument(tv, scoreList.getDocidScore(r));
+        }
+
+        return termScores.getTermScores();
+    }
+
+    /**
+     * Get the term vector of a document field, from the cache if term
+     * vectors are cached.  The term vector must not be modified.
+     *
+     * @param docid An internal document id.
+     * @param field The name of a document field.
+     * @return The term vector.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    private TermVector getTermVector(int docid, String field) throws IOException {
+        TermVectorCache cache = this.termVectorCache;
+        return (cache != null) ? cache.get(docid, field) : new TermVector(docid, field);
+    }
+
     /**
      * Print a message indicating the amount of memory used. The caller can
      * indicate whether garbage collection should be performed, which slows the
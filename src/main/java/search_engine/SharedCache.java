@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * The process's instance of a cache (e.g., InvListCache).
+ * <p>
+ * Cache keys include the index (see Idx.getIndexSignature), so one
+ * instance can be shared by every SearchEngine and thread, and what one
+ * engine caches is used by the next one in the same process, e.g., the
+ * models of QryServer and QrySweep or the tests that run QryEval.main
+ * many times.  The instance is created the first time it is opened,
+ * and created again (empty) if its configuration, e.g., its budget,
+ * changes.
+ * </p>
+ *
+ * @param <C> The type of the cache.
+ */
+final class SharedCache<C> {
+
+    //  --------------- Constants and variables -----------------------
+
+    private C instance = null;
+    private Object config = null;
+
+    //  --------------- Methods ---------------------------------------
+
+    /**
+     * Get the process's cache.
+     *
+     * @param config  The cache's configuration; compared with equals.
+     * @param factory Creates the cache if there isn't one with config.
+     * @return The cache.
+     */
+    synchronized C open(Object config, Supplier<C> factory) {
+        if ((this.instance == null) || !Objects.equals(this.config, config)) {
+            this.instance = factory.get();
+            this.config = config;
+        }
+        return this.instance;
+    }
+}
@@ -36,7 +36,6 @@ public class TermVector {
     public String fieldName;
 
     private int fieldLength;
-    private Terms luceneTerms;
     private int[] positions;    // Index of the stem that at this position
     private String[] stems;    // The vocabulary. 0 indicates a stopword
     private int[] stemsFreq;    // The frequency (tf) of each entry in stems
@@ -56,17 +55,17 @@ public class TermVector {
 
         //  Fetch the term vector, if one exists.
 
-        this.luceneTerms = Idx.INDEXREADER.getTermVector(docId, fieldName);
+        Terms luceneTerms = Idx.INDEXREADER.getTermVector(docId, fieldName);
 
         //  If Lucene doesn't have a term vector, our TermVector is empty.
 
-        if (this.luceneTerms == ((Terms) null)) {
+        if (luceneTerms == ((Terms) null)) {
             return;
         }
 
         //  Allocate space for stems. The 0'th stem indicates a stopword.
 
-        int stemsLength = (int) this.luceneTerms.size();
+        int stemsLength = (int) luceneTerms.size();
         stems = new String[stemsLength + 1];
         terms = new Term[stemsLength + 1];
         stemsFreq = new int[stemsLength + 1];
@@ -75,7 +74,7 @@ public class TermVector {
         //  information, and finding the position of the last term. The
         //  0'th term indicates a stopword, so this loop starts at i=1.
 
-        TermsEnum ithTerm = this.luceneTerms.iterator();
+        TermsEnum ithTerm = luceneTerms.iterator();
 
         int lastPosition = 0;
         for (int i = 1; ithTerm.next() != null; i++) {
@@ -102,7 +101,7 @@ public class TermVector {
         // to be one bigger than the biggest position.
         positions = new int[lastPosition + 1];
 
-        ithTerm = this.luceneTerms.iterator();
+        ithTerm = luceneTerms.iterator();
 
         for (int i = 0; ithTerm.next() != null; i++) {
             PostingsEnum ithPositions = ithTerm.postings(null, PostingsEnum.POSITIONS);
@@ -114,9 +113,30 @@ public class TermVector {
         }
     }
 
+    /**
+     * Estimate the amount of heap used by the term vector: 4 bytes per
+     * position and stem frequency, and about 96 bytes plus 2 bytes per
+     * character for each stem's String and Term.
+     *
+     * @return The approximate size of the term vector, in bytes.
+     */
+    public long ramBytesUsed() {
+        long bytes = 64;   // the object and its array headers
+        if (this.positions != null) bytes += 4L * this.positions.length;
+        if (this.stemsFreq != null) bytes += 4L * this.stemsFreq.length;
+        if (this.stems != null) {
+            for (String stem : this.stems) {
+                bytes += 96 + ((stem == null) ? 0 : 2L * stem.length());
+            }
+        }
+        return bytes;
+    }
+
     /**
      * Get the index of stem in the stems vector, or -1 if the stems
-     * vector does not contain the stem.
+     * vector does not contain the stem.  Lucene returns a term vector's
+     * terms in sorted order, so the stems vector is sorted (after the
+     * stopword entry), and the stem is found by binary search.
      *
      * @param stem The stem to search for.
      * @return the index of the stem in the stems vector, or -1 if it does not occur.
@@ -126,13 +146,44 @@ public class TermVector {
         if (this.fieldLength < 1)
             return -1;
 
-        for (int s = 1; s < this.stems.length; s++)
-            if (stem.equals(this.stems[s]))
-                return s;
+        int lo = 1;
+        int hi = this.stems.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareStems(this.stems[mid], stem);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
 
         return -1;
     }
 
+    /**
+     * Compare two stems in Lucene's term order, i.e., the order of their
+     * UTF-8 encodings, which is the order of their code points.  That
+     * differs from String.compareTo only when a character above U+FFFF
+     * (a surrogate pair) is compared with one in U+E000-U+FFFF.
+     */
+    private static int compareStems(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        for (int i = 0; i < n; i++) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(i);
+            if (ca != cb) {
+                boolean sa = Character.isSurrogate(ca);
+                boolean sb = Character.isSurrogate(cb);
+                if (sa != sb) return sa ? 1 : -1;
+                return ca - cb;
+            }
+        }
+        return a.length() - b.length();
+    }
+
     /**
      * Get the number of positions in this field (the length of the
      * field). If positions are not stored, it returns 0.
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import java.io.IOException;
+
+/**
+ * A cache of term vectors decoded from the index, so that a document
+ * that is in the initial rankings of several queries (LTR features,
+ * PRF expansion terms) is decoded once instead of once per query.
+ * <p>
+ * Term vectors are keyed by the index, docid, and field, and are kept
+ * in least-recently-used order up to a budget of bytes
+ * (TermVector.ramBytesUsed; see LruCache).  Cached term vectors are
+ * shared by every caller, so they must not be modified.
+ * </p>
+ */
+public class TermVectorCache extends LruCache<TermVector> {
+
+    //  --------------- Constants and variables -----------------------
+
+    private static final SharedCache<TermVectorCache> shared = new SharedCache<>();
+
+    //  --------------- Methods ---------------------------------------
+
+    private TermVectorCache(long maxBytes) {
+        super(maxBytes, TermVector::ramBytesUsed, "term vectors");
+    }
+
+    /**
+     * Get the process's cache (see SharedCache).
+     *
+     * @param maxBytes The memory budget, in bytes.
+     * @return The cache.
+     */
+    public static TermVectorCache open(long maxBytes) {
+        return shared.open(maxBytes, () -> new TermVectorCache(maxBytes));
+    }
+
+    /**
+     * Get the term vector of a document field, reading it from the
+     * index if it isn't cached.
+     *
+     * @param docid An internal document id.
+     * @param field The name of a document field.
+     * @return The term vector.  It must not be modified.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public TermVector get(int docid, String field) throws IOException {
+        String key = Idx.getIndexSignature() + "\n" + field + "\n" + docid;
+        return this.get(key, () -> new TermVector(docid, field));
+    }
+}
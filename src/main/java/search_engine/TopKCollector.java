@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2023, Carnegie Mellon University.  All Rights Reserved.
+ */
+package search_engine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Collects the k best documents of a query while it is evaluated,
+ * using a bounded min-heap, so ranking n matching documents costs
+ * O(n log k) time and O(k) memory instead of sorting all n.
+ * <p>
+ * Documents are ordered as ScoreList.sort orders them:  by score, then
+ * by external docid.  External docids are only looked up to break a
+ * tie with the heap's worst entry.
+ * </p>
+ */
+public class TopKCollector {
+
+    //  --------------- Constants and variables -----------------------
+
+    /**
+     * Looks up the external docid of an internal docid.
+     */
+    @FunctionalInterface
+    interface ExternalIdLookup {
+        String get(int docid) throws IOException;
+    }
+
+    private final int k;
+    private final ExternalIdLookup lookup;
+    private int size = 0;
+
+    //  A binary min-heap of the k best documents, stored column-wise.
+    //  The root (index 0) is the worst document in the heap.
+
+    private final int[] docids;
+    private final double[] scores;
+    private final String[] externalIds;   // null until looked up
+
+    //  --------------- Methods ---------------------------------------
+
+    /**
+     * @param k The number of documents to keep.
+     */
+    public TopKCollector(int k) {
+        this(k, Idx::getExternalDocid);
+    }
+
+    /**
+     * @param k      The number of documents to keep.
+     * @param lookup Where external docids are looked up, e.g., in tests.
+     */
+    TopKCollector(int k, ExternalIdLookup lookup) {
+        this.k = Math.max(k, 0);
+        this.lookup = lookup;
+        this.docids = new int[this.k];
+        this.scores = new double[this.k];
+        this.externalIds = new String[this.k];
+    }
+
+    /**
+     * Offer a document to the collector.
+     *
+     * @param docid An internal document id.
+     * @param score The document's score.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public void add(int docid, double score) throws IOException {
+        if (this.size < this.k) {
+            this.docids[this.size] = docid;
+            this.scores[this.size] = score;
+            this.externalIds[this.size] = null;
+            this.siftUp(this.size++);
+            return;
+        }
+
+        if (this.k == 0) return;
+
+        //  Replace the worst document if the new one ranks above it.
+
+        String externalId = null;
+        if (score < this.scores[0]) {
+            return;
+        } else if (!(score > this.scores[0])) {
+            externalId = this.lookup.get(docid);
+            if (externalId.compareTo(this.externalId(0)) > 0) return;
+        }
+
+        this.docids[0] = docid;
+        this.scores[0] = score;
+        this.externalIds[0] = externalId;
+        this.siftDown(0);
+    }
+
+    /**
+     * Indicates whether the collector holds k documents, i.e., whether
+     * a new document must beat minScore to be kept.
+     *
+     * @return True if the collector is full.
+     */
+    public boolean isFull() {
+        return this.size >= this.k;
+    }
+
+    /**
+     * The score of the worst document that is kept.  Once the collector
+     * is full, a document that scores below this can't enter it (one
+     * that scores the same may, on external docid).
+     *
+     * @return The lowest kept score, or -Infinity if not full.
+     */
+    public double minScore() {
+        return this.isFull() && this.k > 0 ? this.scores[0] : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Get the number of documents collected so far.
+     *
+     * @return The number of documents in the collector.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Empty the collector into a sorted ScoreList.
+     *
+     * @return The collected documents, best first.
+     * @throws IOException Error accessing the Lucene index.
+     */
+    public ScoreList toScoreList() throws IOException {
+        int n = this.size;
+        int[] sortedDocids = new int[n];
+        double[] sortedScores = new double[n];
+        String[] sortedExternalIds = new String[n];
+
+        //  Pop the worst document until the heap is empty.
+
+        for (int i = n - 1; i >= 0; i--) {
+            sortedDocids[i] = this.docids[0];
+            sortedScores[i] = this.scores[0];
+            sortedExternalIds[i] = this.externalIds[0];
+
+            this.size--;
+            this.docids[0] = this.docids[this.size];
+            this.scores[0] = this.scores[this.size];
+            this.externalIds[0] = this.externalIds[this.size];
+            this.siftDown(0);
+        }
+
+        ScoreList results = new ScoreList();
+        for (int i = 0; i < n; i++) {
+            results.add(sortedDocids[i], sortedExternalIds[i], sortedScores[i]);
+        }
+        return results;
+    }
+
+    /**
+     * The external docid of the i'th heap entry, looked up on demand.
+     */
+    private String externalId(int i) throws IOException {
+        if (this.externalIds[i] == null) {
+            this.externalIds[i] = this.lookup.get(this.docids[i]);
+        }
+        return this.externalIds[i];
+    }
+
+    /**
+     * Whether heap entry i ranks below heap entry j (the order used by
+     * ScoreList.ScoreListComparator, reversed).
+     */
+    private boolean worse(int i, int j) {
+        if (this.scores[i] < this.scores[j]) return true;
+        if (this.scores[i] > this.scores[j]) return false;
+
+        try {
+            return this.externalId(i).compareTo(this.externalId(j)) > 0;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!this.worse(i, parent)) break;
+            this.swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= this.size) break;
+
+            int child = left;
+            if ((left + 1 < this.size) && this.worse(left + 1, left)) child = left + 1;
+            if (!this.worse(child, i)) break;
+
+            this.swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int d = this.docids[i];
+        this.docids[i] = this.docids[j];
+        this.docids[j] = d;
+
+        double s = this.scores[i];
+        this.scores[i] = this.scores[j];
+        this.scores[j] = s;
+
+        String e = this.externalIds[i];
+        this.externalIds[i] = this.externalIds[j];
+        this.externalIds[j] = e;
+    }
+}
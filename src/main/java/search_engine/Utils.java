@@ -5,16 +5,12 @@ package search_engine;
 
 import java.io.*;
 import java.util.*;
-import java.nio.charset.*;
 
 /**
  * Miscellaneous utilities.
  */
 public class Utils {
 
-    // Allocating a CharsetEncoder is a little slow, so do it just once.
-    private static final CharsetEncoder asciiEncoder = StandardCharsets.US_ASCII.newEncoder();
-
     /**
      * Run an external process.
      *
@@ -89,18 +85,11 @@ public class Utils {
      * @return True if, and only if, s is entirely ASCII.
      */
     public static boolean isAsciiString(String s) {
-        return asciiEncoder.canEncode(s);
-    }
-
-    public static double getTermOverlap(TermVector termVector, String[] stems) {
-        double ret = 0;
-        if (termVector.stemsLength() == 0 && termVector.positionsLength() == 0) return Double.NaN;
-        for (String stem : stems) {
-            int stemIdx = termVector.indexOfStem(stem);
-            if (stemIdx != -1) ++ret;
+        // not a shared CharsetEncoder, which isn't thread-safe
+        for (int i = 0; i < s.length(); ++i) {
+            if (s.charAt(i) > 0x7F) return false;
         }
-
-        return ret;
+        return true;
     }
 }
 
@@ -0,0 +1,80 @@
+package search_engine;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Compares exhaustive evaluation of the BM25 bag-of-words experiments
+ * with MaxScore and Block-Max WAND (BM25:pruning).  Each query set is
+ * run once per algorithm; the rankings must be identical.  The first
+ * bmw run also builds the block-max sidecar file if it doesn't exist.
+ */
+public class BlockMaxExp {
+    private static final String OUTPUT_DIR = "exp/";
+    private static final String[][] EXPS = {
+            {"experiments/hw2", "HW2-Exp-1.1b"},
+            {"experiments/hw4", "HW4-Exp-1.1a"},
+    };
+    private static final String[] PRUNING = {"none", "maxscore", "bmw"};
+
+    /**
+     * Run an experiment with a pruning algorithm.
+     *
+     * @return The running time, in seconds.
+     */
+    double runSearchEngine(String expFileDir, String expID, String pruning) throws Exception {
+        Path param_path = Paths.get(expFileDir, expID + ".param");
+        Path tmp_param_path = Paths.get(OUTPUT_DIR, expID + "-" + pruning + ".param");
+        String content = new String(Files.readAllBytes(param_path));
+        content = content.replaceAll("INPUT_DIR", "E:/");
+        content = content.replaceAll("TEST_DIR", expFileDir);
+        content = content.replaceAll("OUTPUT_DIR", OUTPUT_DIR);
+        content = content.replaceAll("trecEvalOutputPath=.*", "trecEvalOutputPath=" + outputPath(expID, pruning));
+        content += "\nBM25:pruning=" + pruning + "\n";
+        Files.write(tmp_param_path, content.getBytes());
+
+        long start = System.nanoTime();
+        QryEval.main(new String[]{tmp_param_path.toString()});
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static String outputPath(String expID, String pruning) {
+        return OUTPUT_DIR + expID + "-" + pruning + ".teIn";
+    }
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        Path dir = Paths.get(OUTPUT_DIR);
+        if (!Files.exists(dir))
+            Files.createDirectories(dir);
+    }
+
+    @Test
+    void testPruning() throws Exception {
+        StringBuilder report = new StringBuilder(String.format("%-16s %10s %10s %10s%n", "exp", "none(s)", "maxscore(s)", "bmw(s)"));
+
+        for (String[] exp : EXPS) {
+            double[] times = new double[PRUNING.length];
+            for (int i = 0; i < PRUNING.length; ++i) {
+                times[i] = runSearchEngine(exp[0], exp[1], PRUNING[i]);
+            }
+
+            byte[] expected = Files.readAllBytes(Paths.get(outputPath(exp[1], PRUNING[0])));
+            for (int i = 1; i < PRUNING.length; ++i) {
+                byte[] actual = Files.readAllBytes(Paths.get(outputPath(exp[1], PRUNING[i])));
+                if (!Arrays.equals(expected, actual))
+                    throw new AssertionError(exp[1] + ": " + PRUNING[i] + " ranking differs from exhaustive evaluation");
+            }
+
+            report.append(String.format("%-16s %10.2f %10.2f %10.2f%n", exp[1], times[0], times[1], times[2]));
+        }
+
+        System.out.print(report);
+    }
+}
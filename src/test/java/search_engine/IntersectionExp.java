@@ -0,0 +1,146 @@
+package search_engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+/**
+ * Microbenchmark for docIterator advancement on synthetic inverted
+ * lists (no index is needed).  A 50-posting list is intersected with
+ * lists that are 1x ... 100,000x longer, using a linear merge (the old
+ * docIteratorAdvanceTo), galloping search over the docid array, and
+ * the #AND and #NEAR operators, which now use galloping search.
+ */
+public class IntersectionExp {
+    private static final int SHORT_DF = 50;
+    private static final int[] DF_RATIOS = {1, 10, 100, 1000, 10000, 100000};
+    private static final int REPEATS = 60;
+
+    /**
+     * A QryIop whose inverted list is given instead of read from the index.
+     */
+    private static class FixedQryIop extends QryIop {
+        private final InvList list;
+
+        FixedQryIop(InvList list) {
+            this.list = list;
+            this.field = "body";
+        }
+
+        @Override
+        protected void evaluate() {
+            this.invertedList = this.list;
+        }
+    }
+
+    /**
+     * Build a list of df random, distinct docids in [0, maxDocid), with
+     * a single location per posting.
+     */
+    private static InvList randomList(Random random, int df, int maxDocid) {
+        boolean[] used = new boolean[maxDocid];
+        for (int n = 0; n < df; ) {
+            int d = random.nextInt(maxDocid);
+            if (!used[d]) {
+                used[d] = true;
+                ++n;
+            }
+        }
+
+        InvList list = new InvList("body");
+        int[] loc = new int[1];
+        for (int d = 0; d < maxDocid; ++d) {
+            if (used[d]) {
+                loc[0] = d % 7;
+                list.appendPosting(d, loc, 1);
+            }
+        }
+        return list;
+    }
+
+    private static int linearIntersect(InvList a, InvList b) {
+        int matches = 0;
+        int j = 0;
+        for (int i = 0; i < a.df; ++i) {
+            int docid = a.getDocid(i);
+            while (j < b.df && b.getDocid(j) < docid) ++j;
+            if (j < b.df && b.getDocid(j) == docid) ++matches;
+        }
+        return matches;
+    }
+
+    private static int gallopingIntersect(InvList a, InvList b) {
+        int matches = 0;
+        int j = 0;
+        for (int i = 0; i < a.df; ++i) {
+            int docid = a.getDocid(i);
+            j = b.findDocid(j, docid);
+            if (j < b.df && b.getDocid(j) == docid) ++matches;
+        }
+        return matches;
+    }
+
+    private static int andIntersect(InvList a, InvList b) throws Exception {
+        RetrievalModel r = new RetrievalModelUnrankedBoolean();
+        QrySopAnd and = new QrySopAnd();
+        and.appendArg(new FixedQryIop(a));
+        and.appendArg(new FixedQryIop(b));
+        and.initialize(r);
+
+        int matches = 0;
+        while (and.docIteratorHasMatch(r)) {
+            int docid = and.docIteratorGetMatch();
+            ++matches;
+            and.docIteratorAdvancePast(docid);
+        }
+        return matches;
+    }
+
+    private static int nearIntersect(InvList a, InvList b) throws Exception {
+        QryIopNear near = new QryIopNear(10);
+        near.appendArg(new FixedQryIop(a));
+        near.appendArg(new FixedQryIop(b));
+        near.initialize(null);
+        return near.getDf();
+    }
+
+    @Test
+    void testIntersection() throws Exception {
+        Random random = new Random(11642);
+        System.out.printf("%10s %10s %12s %12s %12s %12s%n",
+                "ratio", "longDf", "linear(us)", "gallop(us)", "#and(us)", "#near(us)");
+
+        for (int ratio : DF_RATIOS) {
+            int longDf = SHORT_DF * ratio;
+            int maxDocid = 2 * longDf;
+            InvList shortList = randomList(random, SHORT_DF, maxDocid);
+            InvList longList = randomList(random, longDf, maxDocid);
+
+            long linear = 0, gallop = 0, and = 0, near = 0;
+            for (int rep = 0; rep < REPEATS; ++rep) {
+                long t0 = System.nanoTime();
+                int m0 = linearIntersect(shortList, longList);
+                long t1 = System.nanoTime();
+                int m1 = gallopingIntersect(shortList, longList);
+                long t2 = System.nanoTime();
+                int m2 = andIntersect(shortList, longList);
+                long t3 = System.nanoTime();
+                nearIntersect(shortList, longList);
+                long t4 = System.nanoTime();
+
+                if (m0 != m1 || m0 != m2) throw new AssertionError("Intersections differ");
+
+                if (rep >= REPEATS / 2) {   // the first half is JIT warm-up
+                    linear += t1 - t0;
+                    gallop += t2 - t1;
+                    and += t3 - t2;
+                    near += t4 - t3;
+                }
+            }
+
+            int n = REPEATS - REPEATS / 2;
+            System.out.printf("%10d %10d %12.1f %12.1f %12.1f %12.1f%n",
+                    ratio, longDf, linear / 1e3 / n, gallop / 1e3 / n, and / 1e3 / n, near / 1e3 / n);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package search_engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Normalizing and writing feature vectors, without an index.
+ */
+public class LTRFeatureVectorListTests {
+
+    /**
+     * Three documents of query 7.  Feature 1 varies, feature 2 is
+     * missing in every document, feature 3 is the same in every
+     * document, and feature 4 is disabled.
+     */
+    private static LTRFeatureVectorList newList() {
+        LTRFeatureVectorList feats = new LTRFeatureVectorList(new boolean[]{true, true, true, false});
+        String[] externalIds = {"doc-c", "doc-a", "doc-b"};
+        double[] varying = {3, 1, 2};
+        for (int i = 0; i < externalIds.length; ++i) {
+            int n = feats.add(7, 100 + i, externalIds[i], i);
+            feats.set(n, 0, varying[i]);
+            feats.set(n, 1, Double.NaN);
+            feats.set(n, 2, 5);
+            feats.set(n, 3, 9);     // ignored
+        }
+        return feats;
+    }
+
+    @Test
+    void testNormalize() {
+        LTRFeatureVectorList feats = newList();
+        feats.normalize();
+
+        assertEquals(1.0, feats.get(0, 0));
+        assertEquals(0.0, feats.get(1, 0));
+        assertEquals(0.5, feats.get(2, 0));
+        for (int i = 0; i < feats.size(); ++i) {
+            assertEquals(0.0, feats.get(i, 1), "missing feature of document " + i);
+            assertEquals(0.0, feats.get(i, 2), "constant feature of document " + i);
+            assertEquals(Double.NaN, feats.get(i, 3), "disabled feature of document " + i);
+        }
+    }
+
+    @Test
+    void testSortAndWrite() throws Exception {
+        LTRFeatureVectorList feats = newList();
+        feats.sort();
+        feats.normalize();
+
+        StringWriter out = new StringWriter();
+        feats.write(out, 7);
+        assertEquals(
+                "1 qid:7 1:0.0 2:0.0 3:0.0 # doc-a\n" +
+                "2 qid:7 1:0.5 2:0.0 3:0.0 # doc-b\n" +
+                "0 qid:7 1:1.0 2:0.0 3:0.0 # doc-c\n",
+                out.toString());
+        assertEquals(101, feats.getDocid(0));
+        assertEquals(102, feats.getDocid(1));
+        assertEquals(100, feats.getDocid(2));
+    }
+
+    @Test
+    void testSort() {
+        Random random = new Random(11642);
+        LTRFeatureVectorList feats = new LTRFeatureVectorList(new boolean[]{true});
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            String externalId = "doc-" + random.nextInt(1000);
+            int n = feats.add(7, i, externalId, 0);
+            feats.set(n, 0, i);
+            expected.add(externalId + " " + i);
+        }
+        expected.sort(Comparator.comparing((String e) -> e.split(" ")[0]));   // stable
+
+        feats.sort();
+        for (int i = 0; i < feats.size(); ++i) {
+            String e = feats.getExternalDocid(i) + " " + feats.getDocid(i);
+            assertEquals(expected.get(i), e);
+            assertEquals(feats.getDocid(i), (int) feats.get(i, 0));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package search_engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Loading and scoring SVMrank models, without an index.
+ */
+public class LTRRankerTests {
+    private static final String MODEL = "src/test/resources/svmrank-linear.model";
+
+    /**
+     * The scores that svm_rank_classify writes for the feature vectors
+     * of newList and the model in MODEL.  The features are rounded to
+     * float, and the scores to 8 significant digits.
+     */
+    private static final double[] SVM_RANK_CLASSIFY_SCORES = {0.25, 0.60000002, 0.14999999, 0};
+
+    private static LTRFeatureVectorList newList() {
+        double[][] vecs = {
+                {1, 1, 1, 1},
+                {0.2, 0, Double.NaN, 1.0 / 3},
+                {0.7, 0.1, 0, 0},
+                {0, 0, 0, 0}};
+        LTRFeatureVectorList feats = new LTRFeatureVectorList(new boolean[]{true, true, true, true});
+        for (int i = 0; i < vecs.length; ++i) {
+            int n = feats.add(1, i, "doc-" + i, 0);
+            for (int f = 0; f < vecs[i].length; ++f) feats.set(n, f, vecs[i][f]);
+        }
+        return feats;
+    }
+
+    /**
+     * Write a copy of MODEL with some lines replaced or removed.
+     */
+    private static Path copyModel(String from, String to) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(MODEL), StandardCharsets.UTF_8).stream()
+                .map(line -> line.equals(from) ? to : line)
+                .filter(line -> line != null)
+                .collect(Collectors.toList());
+        Path path = Files.createTempFile("svmrank", ".model");
+        path.toFile().deleteOnExit();
+        Files.write(path, lines, StandardCharsets.UTF_8);
+        return path;
+    }
+
+    @Test
+    void testLinearModel() throws IOException {
+        LTRRanker ranker = LTRRanker.load("SVMRank", MODEL);
+        assertArrayEquals(SVM_RANK_CLASSIFY_SCORES, ranker.score(newList()));
+    }
+
+    @Test
+    void testNonLinearModel() throws IOException {
+        Path model = copyModel("0 # kernel type", "2 # kernel type");
+        assertThrows(IOException.class, () -> LTRRanker.load("SVMRank", model.toString()));
+    }
+
+    @Test
+    void testNoThreshold() throws IOException {
+        Path model = copyModel("0 # threshold b, each following line is a SV (starting with alpha*y)", null);
+        assertThrows(IOException.class, () -> LTRRanker.load("SVMRank", model.toString()));
+    }
+}
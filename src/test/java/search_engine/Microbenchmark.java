@@ -0,0 +1,91 @@
+package search_engine;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * The harness of the *Exp microbenchmarks, which time an old and a new
+ * implementation of the same computation on the cw09 index.  Each
+ * repetition runs every implementation once, in order, and the results
+ * must be equal.  The first half of the repetitions is JIT warm-up and
+ * isn't measured.
+ */
+final class Microbenchmark {
+    static final String INDEX_PATH = "E:/index-cw09";
+
+    /**
+     * One implementation of the computation.
+     */
+    @FunctionalInterface
+    interface Implementation {
+        Object run() throws Exception;
+    }
+
+    private final int repeats;
+    private final long[] nanos;
+    private long ops = 0;
+
+    /**
+     * @param repeats         The number of repetitions.
+     * @param implementations The number of implementations that are timed.
+     */
+    Microbenchmark(int repeats, int implementations) {
+        this.repeats = repeats;
+        this.nanos = new long[implementations];
+    }
+
+    static void openIndex() throws IOException {
+        Idx.open(INDEX_PATH, true);
+    }
+
+    /**
+     * Run one repetition of every implementation.
+     *
+     * @param rep             The repetition, 0 ... repeats - 1.
+     * @param what            What is computed, for the error message.
+     * @param implementations The implementations, old first.
+     * @return The result, which every implementation computed.
+     * @throws Exception An implementation failed, or the results differ.
+     */
+    Object run(int rep, String what, Implementation... implementations) throws Exception {
+        Object result = null;
+        for (int i = 0; i < implementations.length; ++i) {
+            long t0 = System.nanoTime();
+            Object r = implementations[i].run();
+            long t1 = System.nanoTime();
+
+            if (i == 0) {
+                result = r;
+            } else if (!Objects.deepEquals(result, r)) {
+                throw new AssertionError(what + ": results differ");
+            }
+            if (this.isMeasured(rep)) this.nanos[i] += t1 - t0;
+        }
+        return result;
+    }
+
+    /**
+     * Count the operations (e.g., documents scored) of a repetition.
+     */
+    void addOps(int rep, long n) {
+        if (this.isMeasured(rep)) this.ops += n;
+    }
+
+    boolean isMeasured(int rep) {
+        return rep >= this.repeats / 2;   // the first half is JIT warm-up
+    }
+
+    /**
+     * @return The measured operations.
+     */
+    long ops() {
+        return this.ops;
+    }
+
+    /**
+     * @return The time of an implementation per measured operation, in ns.
+     */
+    double nanosPerOp(int implementation) {
+        return this.nanos[implementation] / (double) this.ops;
+    }
+}
@@ -2,8 +2,7 @@ package search_engine;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -40,20 +39,16 @@ public abstract class QryEvalLTRTests extends QryEvalTests {
     private void checkLTRFeatList(LTRFeatureVectorList ansFeatList, LTRFeatureVectorList outFeatList) {
         assertEquals(ansFeatList.size(), outFeatList.size());
         for (int i = 0; i < ansFeatList.size(); ++i) {
-            var ans = ansFeatList.get(i);
-            var out = outFeatList.get(i);
-
-            assertEquals(ans.externalId, out.externalId);
-            assertEquals(ans.docid, out.docid);
-            assertEquals(ans.qryID, out.qryID);
-            assertEquals(ans.relevance, out.relevance);
-
-            // feature vectors
-            assertTrue(out.featVector.size() >= ans.featVector.size());
-            for (var e : ans.featVector.entrySet()) {
-                int idx = e.getKey();
-                double val = e.getValue();
-                assertEquals(val, out.featVector.get(idx), 1e-6, "Incorrect feature at index: " + idx);
+            assertEquals(ansFeatList.getExternalDocid(i), outFeatList.getExternalDocid(i));
+            assertEquals(ansFeatList.getDocid(i), outFeatList.getDocid(i));
+            assertEquals(ansFeatList.getRelevance(i), outFeatList.getRelevance(i));
+
+            // feature vectors; a feature that isn't in the answer is NaN
+            for (int f = 0; f < ansFeatList.numFeatures(); ++f) {
+                double val = ansFeatList.get(i, f);
+                if (Double.isNaN(val)) continue;
+
+                assertEquals(val, outFeatList.get(i, f), 1e-6, "Incorrect feature at index: " + f);
             }
         }
     }
@@ -61,7 +56,9 @@ public abstract class QryEvalLTRTests extends QryEvalTests {
     private Map<Integer, LTRFeatureVectorList> readLTRFeatureFile(String path) throws Exception {
         Map<Integer, LTRFeatureVectorList> ret = new HashMap<>();
 
-        LTRFeatureVectorList featList = new LTRFeatureVectorList();
+        boolean[] enabled = new boolean[SearchEngine.NUM_LTR_FEATURES];
+        Arrays.fill(enabled, true);
+        LTRFeatureVectorList featList = new LTRFeatureVectorList(enabled);
         int prevQid = -1;
         try (BufferedReader br = new BufferedReader(new FileReader(path))) {
             String line;
@@ -80,22 +77,21 @@ public abstract class QryEvalLTRTests extends QryEvalTests {
 
                 if (qid != prevQid && prevQid != -1) {
                     ret.put(prevQid, featList);
-                    featList = new LTRFeatureVectorList();
+                    featList = new LTRFeatureVectorList(enabled);
                 }
                 prevQid = qid;
 
-                Map<Integer, Double> vec = new HashMap<>();
-                for (int i = substrings.length - 3; i >= 2; --i) { // loop backwards so we can initialize vec with the largest size
+                String externalID = substrings[substrings.length - 1];
+                int docid = Idx.getInternalDocid(externalID);
+                int n = featList.add(qid, docid, externalID, relevance);
+                for (int i = 2; i < substrings.length - 2; ++i) {
                     String[] featureStrings = substrings[i].split(":");
                     assertEquals(2, featureStrings.length);
 
                     int featIdx = Integer.parseInt(featureStrings[0]); // starting from 1
                     double val = Double.parseDouble(featureStrings[1]);
-                    vec.put(featIdx - 1, val);
+                    featList.set(n, featIdx - 1, val);
                 }
-                String externalID = substrings[substrings.length - 1];
-                int docid = Idx.getInternalDocid(externalID);
-                featList.add(qid, docid, externalID, vec, relevance);
             }
         }
 
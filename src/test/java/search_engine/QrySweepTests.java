@@ -0,0 +1,67 @@
+package search_engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Expanding sweep: parameters into a grid, without an index.
+ */
+public class QrySweepTests {
+
+    private static Map<String, String> newParameters() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("retrievalAlgorithm", "Indri");
+        parameters.put("trecEvalOutputPath", "tmp/HW2-Train-0.teIn");
+        parameters.put("sweep:Indri:lambda", "0.4, 0.7");
+        parameters.put("sweep:Indri:mu", "1000,2500");
+        return parameters;
+    }
+
+    @Test
+    void testGrid() {
+        List<Map<String, String>> grid = QrySweep.getGrid(newParameters());
+
+        assertEquals(List.of(
+                Map.of("Indri:mu", "1000", "Indri:lambda", "0.4"),
+                Map.of("Indri:mu", "1000", "Indri:lambda", "0.7"),
+                Map.of("Indri:mu", "2500", "Indri:lambda", "0.4"),
+                Map.of("Indri:mu", "2500", "Indri:lambda", "0.7")), grid);
+
+        String[] paths = {
+                "tmp/HW2-Train-0_mu=1000_lambda=0.4.teIn",
+                "tmp/HW2-Train-0_mu=1000_lambda=0.7.teIn",
+                "tmp/HW2-Train-0_mu=2500_lambda=0.4.teIn",
+                "tmp/HW2-Train-0_mu=2500_lambda=0.7.teIn"};
+        for (int i = 0; i < paths.length; ++i) {
+            assertEquals(paths[i], QrySweep.getOutputPath("tmp/HW2-Train-0.teIn", grid.get(i)));
+        }
+    }
+
+    @Test
+    void testOutputPathWithoutExtension() {
+        assertEquals("tmp.d/out_mu=1000",
+                QrySweep.getOutputPath("tmp.d/out", Map.of("Indri:mu", "1000")));
+    }
+
+    @Test
+    void testInvalidSweeps() {
+        Map<String, String> parameters = newParameters();
+        parameters.put("sweep:BM25:b", "0.5");
+        assertThrows(IllegalArgumentException.class, () -> QrySweep.getGrid(parameters));
+
+        parameters.remove("sweep:BM25:b");
+        parameters.put("sweep:indexPath", "INPUT_DIR/index-cw09");
+        assertThrows(IllegalArgumentException.class, () -> QrySweep.getGrid(parameters));
+
+        parameters.remove("sweep:indexPath");
+        parameters.remove("sweep:Indri:mu");
+        parameters.remove("sweep:Indri:lambda");
+        assertThrows(IllegalArgumentException.class, () -> QrySweep.getGrid(parameters));
+    }
+}
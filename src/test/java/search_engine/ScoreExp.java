@@ -0,0 +1,123 @@
+package search_engine;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+/**
+ * Microbenchmark for scoring the documents of long inverted lists with
+ * the SCORE operator, whose document-independent statistics are
+ * computed once when it is initialized, against the old per-document
+ * computation of the same formulas (the number of documents, average
+ * field length, RSJ weight, and pMLE for every document).  The scores
+ * must be identical.
+ */
+public class ScoreExp {
+    private static final String[] TERMS = {"new", "time", "information", "home", "page"};
+    private static final String FIELD = "body";
+    private static final int REPEATS = 200;
+
+    private static BM25 bm25;
+    private static Indri indri;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        Microbenchmark.openIndex();
+        bm25 = new BM25(0.75, 1.2, 0);
+        indri = new Indri(2500, 0.4);
+    }
+
+    /**
+     * The old QrySopScore.getScoreBM25.
+     */
+    private static double legacyScoreBM25(BM25 model, QryIop q) throws IOException {
+        long docLen = Idx.getFieldLength(q.field, q.docIteratorGetMatch());
+        int tf = q.docIteratorGetMatchTf();
+        long N = Idx.getNumDocs();
+        double avgDocLen = model.fieldTotalLengths.get(q.field) / (double) model.fieldDocCounts.get(q.field);
+        int df = q.getDf();
+
+        double rsjWeight = Math.max(0, Math.log((N - df + 0.5) / (df + 0.5)));
+        double termWeight = tf / (
+                tf + model.getK1() * (
+                        1 - model.getB() + model.getB() * docLen / avgDocLen
+                )
+        );
+        return rsjWeight * termWeight;
+    }
+
+    /**
+     * The old QrySopScore.getScoreIndri.
+     */
+    private static double legacyScoreIndri(Indri model, QryIop q) throws IOException {
+        double pMLE = (double) q.getCtf() / model.fieldTotalLengths.get(q.field);
+        double pDirichlet = (
+                q.docIteratorGetMatchTf() + model.getMu() * pMLE
+        ) / (
+                Idx.getFieldLength(q.field, q.docIteratorGetMatch()) + model.getMu()
+        );
+        if (Double.isNaN(pDirichlet)) pDirichlet = 0.0;
+
+        return (1 - model.getLambda()) * pDirichlet + model.getLambda() * pMLE;
+    }
+
+    /**
+     * Score every document of an initialized SCORE operator.
+     *
+     * @return The sum of the scores.
+     */
+    private static double scoreAll(RetrievalModel model, QrySopScore score) throws IOException {
+        double sum = 0;
+        while (score.docIteratorHasMatch(model)) {
+            int docid = score.docIteratorGetMatch();
+            sum += score.getScore(model);
+            score.docIteratorAdvancePast(docid);
+        }
+        return sum;
+    }
+
+    /**
+     * Score every document of an initialized TERM operator with the old
+     * formulas.
+     *
+     * @return The sum of the scores.
+     */
+    private static double legacyScoreAll(RetrievalModel model, QryIopTerm q) throws IOException {
+        double sum = 0;
+        while (q.docIteratorHasMatch(model)) {
+            int docid = q.docIteratorGetMatch();
+            sum += (model instanceof BM25) ? legacyScoreBM25((BM25) model, q) : legacyScoreIndri((Indri) model, q);
+            q.docIteratorAdvancePast(docid);
+        }
+        return sum;
+    }
+
+    @Test
+    void testScore() throws Exception {
+        System.out.printf("%-12s %8s %10s %12s %12s%n", "term", "model", "df", "legacy(ms)", "prepared(ms)");
+
+        for (String term : TERMS) {
+            for (RetrievalModel model : new RetrievalModel[]{bm25, indri}) {
+                Microbenchmark bench = new Microbenchmark(REPEATS, 2);
+                for (int rep = 0; rep < REPEATS; ++rep) {
+
+                    //  Only scoring is timed, not reading the inverted list.
+
+                    QryIopTerm q = new QryIopTerm(term, FIELD);
+                    q.initialize(model);
+                    QrySopScore score = new QrySopScore();
+                    score.appendArg(new QryIopTerm(term, FIELD));
+                    score.initialize(model);
+
+                    bench.run(rep, term, () -> legacyScoreAll(model, q), () -> scoreAll(model, score));
+                    bench.addOps(rep, 1);
+                }
+
+                System.out.printf("%-12s %8s %10d %12.2f %12.2f%n",
+                        term, model.getClass().getSimpleName(), Idx.getDocFreq(FIELD, term),
+                        bench.nanosPerOp(0) / 1e6, bench.nanosPerOp(1) / 1e6);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package search_engine;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+/**
+ * Microbenchmark for the per-document cost of scoring a query tree with
+ * compiled scorers (QrySop.getScorer), against the old getScore, which
+ * tested the retrieval model with instanceof in every operator for
+ * every document.  The old dispatch is reproduced here for #SUM, #AND
+ * and #SCORE.  The scores must be identical.
+ */
+public class ScorerExp {
+    private static final String[] QUERIES = {
+            "new time information",
+            "home page new york",
+            "information time home page news",
+    };
+    private static final int REPEATS = 1000;
+
+    private static BM25 bm25;
+    private static Indri indri;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        Microbenchmark.openIndex();
+        bm25 = new BM25(0.75, 1.2, 0);
+        indri = new Indri(2500, 0.4);
+    }
+
+    /**
+     * The old QrySop.getScore dispatch.
+     */
+    private static double legacyScore(QrySop q, RetrievalModel r) throws IOException {
+        if (q instanceof QrySopScore) {
+            if (r instanceof RetrievalModelUnrankedBoolean) {
+                return 1.0;
+            } else if (r instanceof BM25) {
+                return ((QrySopScore) q).getScoreBM25(r);
+            } else if (r instanceof Indri) {
+                return ((QrySopScore) q).getScoreIndri(r);
+            }
+        } else if ((q instanceof QrySopSum) && (r instanceof BM25)) {
+            double score = 0;
+            int docid = q.docIteratorGetMatch();
+            for (Qry _q : q.args) {
+                QrySop q_i = (QrySop) _q;
+                if (q_i.docIteratorHasMatch(r) && (q_i.docIteratorGetMatch() == docid)) {
+                    score += legacyScore(q_i, r);
+                }
+            }
+            return score;
+        } else if ((q instanceof QrySopAnd) && (r instanceof Indri)) {
+            int docid = q.docIteratorGetMatch();
+            double score = 0;
+            for (Qry _q : q.args) {
+                QrySop q_i = (QrySop) _q;
+                double qScore;
+                if (q_i.docIteratorHasMatch(r) && q_i.docIteratorGetMatch() == docid) {
+                    qScore = legacyScore(q_i, r);
+                } else {
+                    qScore = legacyDefaultScore(q_i, (Indri) r, docid);
+                }
+                score += Math.log(qScore);
+            }
+            return Math.exp(score / q.args.size());
+        }
+        throw new IllegalArgumentException(r.getClass().getName() + " isn't benchmarked for " + q);
+    }
+
+    /**
+     * The old IIndriSop.getDefaultScore dispatch.
+     */
+    private static double legacyDefaultScore(QrySop q, Indri r, int docid) throws IOException {
+        if (q instanceof QrySopScore) {
+            return ((QrySopScore) q).getDefaultScoreIndri(r, docid);
+        }
+        throw new IllegalArgumentException("Default scores aren't benchmarked for " + q);
+    }
+
+    /**
+     * Parse and initialize a query.
+     */
+    private static QrySop initialize(String query, RetrievalModel r) throws IOException {
+        QrySop q = (QrySop) QryParser.getQuery(r.defaultQrySopName() + "(" + query + ")");
+        q.initialize(r);
+        return q;
+    }
+
+    /**
+     * Score every document of an initialized query.
+     *
+     * @return The number of documents, and the sum of their scores.
+     */
+    private static double[] scoreAll(QrySop q, RetrievalModel r, boolean compiled) throws IOException {
+        QryScorer scorer = q.getScorer(r);
+        double n = 0, sum = 0;
+        while (q.docIteratorHasMatch(r)) {
+            int docid = q.docIteratorGetMatch();
+            sum += compiled ? scorer.score() : legacyScore(q, r);
+            n++;
+            q.docIteratorAdvancePast(docid);
+        }
+        return new double[]{n, sum};
+    }
+
+    @Test
+    void testScorer() throws Exception {
+        System.out.printf("%-32s %8s %10s %14s %14s%n", "query", "model", "docs", "legacy(ns/doc)", "scorer(ns/doc)");
+
+        for (String query : QUERIES) {
+            for (RetrievalModel model : new RetrievalModel[]{bm25, indri}) {
+                Microbenchmark bench = new Microbenchmark(REPEATS, 2);
+                for (int rep = 0; rep < REPEATS; ++rep) {
+
+                    //  Only scoring is timed, not reading the inverted lists.
+
+                    QrySop q0 = initialize(query, model);
+                    QrySop q1 = initialize(query, model);
+
+                    double[] s = (double[]) bench.run(rep, query,
+                            () -> scoreAll(q0, model, false), () -> scoreAll(q1, model, true));
+                    bench.addOps(rep, (long) s[0]);
+                }
+
+                System.out.printf("%-32s %8s %10.0f %14.1f %14.1f%n",
+                        query, model.getClass().getSimpleName(), bench.ops() / (double) (REPEATS - REPEATS / 2),
+                        bench.nanosPerOp(0), bench.nanosPerOp(1));
+            }
+        }
+    }
+}
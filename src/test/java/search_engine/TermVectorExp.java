@@ -0,0 +1,85 @@
+package search_engine;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Microbenchmark for TermVector.indexOfStem, which binary-searches the
+ * sorted stems, against the old linear scan.  The lookups are those of
+ * PRF before PrfTermScorer:  every stem of the previous documents is
+ * looked up in each document's term vector.  The indexes of every
+ * lookup must be identical.
+ */
+public class TermVectorExp {
+    private static final String FIELD = "body";
+    private static final int NUM_DOCS = 100;      // like prf:numDocs
+    private static final int DOCID_STRIDE = 5003;
+    private static final int REPEATS = 20;
+
+    private static List<TermVector> termVectors = new ArrayList<>();
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        Microbenchmark.openIndex();
+        int maxDoc = Idx.INDEXREADER.maxDoc();
+        for (int i = 0; i < NUM_DOCS; ++i) {
+            termVectors.add(new TermVector((int) ((long) i * DOCID_STRIDE % maxDoc), FIELD));
+        }
+    }
+
+    /**
+     * The old TermVector.indexOfStem.
+     */
+    private static int legacyIndexOfStem(TermVector tv, String stem) {
+        if (tv.positionsLength() == 0)
+            return -1;
+
+        for (int s = 1; s < tv.stemsLength(); s++)
+            if (stem.equals(tv.stemString(s)))
+                return s;
+
+        return -1;
+    }
+
+    /**
+     * Look up stems in a term vector.
+     *
+     * @return The indexes of the stems.
+     */
+    private static int[] indexesOf(TermVector tv, String[] stems, boolean legacy) {
+        int[] indexes = new int[stems.length];
+        for (int i = 0; i < stems.length; ++i) {
+            indexes[i] = legacy ? legacyIndexOfStem(tv, stems[i]) : tv.indexOfStem(stems[i]);
+        }
+        return indexes;
+    }
+
+    @Test
+    void testIndexOfStem() throws Exception {
+        Microbenchmark bench = new Microbenchmark(REPEATS, 2);
+        for (int rep = 0; rep < REPEATS; ++rep) {
+            Set<String> stems = new LinkedHashSet<>();
+            for (TermVector tv : termVectors) {
+                String[] lookups = stems.toArray(new String[0]);
+                bench.run(rep, "doc " + tv.docId,
+                        () -> indexesOf(tv, lookups, true), () -> indexesOf(tv, lookups, false));
+                bench.addOps(rep, lookups.length);
+
+                for (int i = 1; i < tv.stemsLength(); ++i) {
+                    if (tv.indexOfStem(tv.stemString(i)) != i) throw new AssertionError("doc " + tv.docId + ": stems aren't sorted");
+                }
+
+                for (int i = 1; i < tv.stemsLength(); ++i) stems.add(tv.stemString(i));
+            }
+        }
+
+        System.out.printf("%12s %14s %14s%n", "lookups", "legacy(ns/op)", "search(ns/op)");
+        System.out.printf("%12d %14.1f %14.1f%n", bench.ops(), bench.nanosPerOp(0), bench.nanosPerOp(1));
+    }
+}
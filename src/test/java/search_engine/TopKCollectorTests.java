@@ -0,0 +1,121 @@
+package search_engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The bounded heap of TopKCollector against the old sort-and-truncate
+ * (ScoreList.sort, then truncate), without an index:  external docids
+ * come from a table, and lookups are recorded.
+ */
+public class TopKCollectorTests {
+    private static final int NUM_DOCS = 500;
+
+    private final String[] externalIds = new String[NUM_DOCS];
+    private final Set<Integer> lookedUp = new HashSet<>();
+
+    /**
+     * External docids in a different order than the internal docids,
+     * so that ties aren't broken by docid by accident.
+     */
+    TopKCollectorTests() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < NUM_DOCS; ++i) ids.add(i);
+        Collections.shuffle(ids, new Random(11642));
+        for (int i = 0; i < NUM_DOCS; ++i) {
+            this.externalIds[i] = String.format("clueweb09-en%04d", ids.get(i));
+        }
+    }
+
+    private TopKCollector newCollector(int k) {
+        return new TopKCollector(k, docid -> {
+            this.lookedUp.add(docid);
+            return this.externalIds[docid];
+        });
+    }
+
+    /**
+     * Collect documents with a heap and with the old sort-and-truncate,
+     * and check that the rankings are identical.
+     */
+    private void check(int k, double[] scores) throws Exception {
+        TopKCollector collector = this.newCollector(k);
+        ScoreList expected = new ScoreList();
+        for (int docid = 0; docid < scores.length; ++docid) {
+            collector.add(docid, scores[docid]);
+            expected.add(docid, this.externalIds[docid], scores[docid]);
+        }
+        expected.sort();
+        expected.truncate(k);
+
+        ScoreList results = collector.toScoreList();
+        assertEquals(expected.size(), results.size(), "k=" + k);
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.getDocid(i), results.getDocid(i), "k=" + k + ", rank " + i);
+            assertEquals(expected.getDocidScore(i), results.getDocidScore(i), "k=" + k + ", rank " + i);
+        }
+    }
+
+    private static double[] randomScores(Random random, int n, int distinct) {
+        double[] scores = new double[n];
+        for (int i = 0; i < n; ++i) scores[i] = random.nextInt(distinct) / 4.0;
+        return scores;
+    }
+
+    @Test
+    void testSmallK() throws Exception {
+        double[] scores = randomScores(new Random(1), NUM_DOCS, 20);
+        this.check(0, scores);
+        this.check(1, scores);
+        this.check(2, scores);
+    }
+
+    @Test
+    void testMoreMatchesThanK() throws Exception {
+        Random random = new Random(2);
+        for (int k : new int[]{10, 100, NUM_DOCS - 1, NUM_DOCS, NUM_DOCS + 10}) {
+            this.check(k, randomScores(random, NUM_DOCS, 1000));
+            this.check(k, randomScores(random, NUM_DOCS, 30));
+        }
+    }
+
+    @Test
+    void testTiesBrokenByExternalId() throws Exception {
+        double[] scores = new double[NUM_DOCS];   // every score is 0
+        this.check(10, scores);
+        this.check(1, scores);
+    }
+
+    @Test
+    void testLookupsOnlyForTies() throws Exception {
+
+        //  Distinct scores:  no external docid is needed.
+
+        double[] scores = new double[NUM_DOCS];
+        for (int i = 0; i < NUM_DOCS; ++i) scores[i] = (i * 7919) % NUM_DOCS;
+        this.check(20, scores);
+        assertEquals(0, this.lookedUp.size());
+
+        //  Only documents that tie with a kept document are looked up.
+
+        for (int i = 0; i < NUM_DOCS; ++i) scores[i] = (i % 50 == 0) ? 1 : (i * 7919) % NUM_DOCS + 2;
+        TopKCollector collector = this.newCollector(20);
+        for (int docid = 0; docid < NUM_DOCS; ++docid) collector.add(docid, scores[docid]);
+        collector.toScoreList();
+        for (int docid : this.lookedUp) {
+            assertTrue(scores[docid] == 1 || scores[docid] >= NUM_DOCS - 20 + 2, "docid " + docid + " was looked up");
+        }
+        for (int docid = 0; docid < NUM_DOCS; ++docid) {
+            if (scores[docid] == 1) assertTrue(!this.lookedUp.contains(docid), "docid " + docid + " was looked up");
+        }
+    }
+}